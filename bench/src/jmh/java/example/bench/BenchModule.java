@@ -0,0 +1,31 @@
+package example.bench;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+
+import example.runtime.Exposed;
+import example.runtime.JavaModule;
+
+/**
+ * An extension module defined in the way
+ * {@code example.extension.Extension} is, for use in the benchmarks.
+ */
+public class BenchModule extends JavaModule {
+
+    @Exposed.PythonMethod
+    public int foo(int x) { return ((x - 12) * x + 47) * x - 18; }
+
+    @Exposed.PythonMethod
+    public Object bar(Object x, Object y) { return x; }
+
+    public BenchModule() { super(DEFINITION); }
+
+    /** Construct an instance from a definition other than the usual. */
+    BenchModule(JavaModule.Definition definition) { super(definition); }
+
+    /** Access to this class, for definitions made elsewhere. */
+    static final Lookup LOOKUP = MethodHandles.lookup();
+
+    static final JavaModule.Definition DEFINITION =
+            JavaModule.define("bench_module", LOOKUP);
+}
@@ -0,0 +1,34 @@
+package example.bench;
+
+import java.lang.invoke.MethodHandles;
+
+import example.runtime.Exposed;
+import example.runtime.PyType;
+import example.runtime.PyUtil;
+import example.runtime.PythonRuntime;
+
+/**
+ * A type defined in the way {@code example.app.MyType} is, for use as a
+ * receiver in the benchmarks.
+ */
+class BenchType {
+
+    private int content;
+
+    BenchType(int content) { this.content = content; }
+
+    @Exposed.PythonMethod
+    Object __str__() { return "BenchType(" + content + ")"; }
+
+    @Exposed.PythonMethod
+    static Object get_content(BenchType self) { return self.content; }
+
+    @Exposed.PythonMethod
+    static void set_content(BenchType self, int v) { self.content = v; }
+
+    @Override
+    public String toString() { return PyUtil.defaultToString(this); }
+
+    static final PyType TYPE = PythonRuntime.typeFactory.register(
+            "BenchType", BenchType.class, MethodHandles.lookup());
+}
@@ -0,0 +1,93 @@
+package example.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import example.runtime.Py;
+import example.runtime.PyDict;
+
+/** Get, put, iteration and bulk operations on {@link PyDict}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class DictBench {
+
+    @Param({"5", "1000"})
+    int size;
+
+    PyDict dict;
+    String[] keys;
+    String hit, miss;
+    int next;
+
+    @Setup
+    public void setup() {
+        dict = Py.dict();
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key" + i;
+            dict.put(keys[i], i);
+        }
+        // Equal to but not identical with a key.
+        hit = new String("key" + (size / 2));
+        miss = "absent";
+    }
+
+    @Benchmark
+    public Object get_hit() { return dict.get(hit); }
+
+    @Benchmark
+    public Object get_miss() { return dict.get(miss); }
+
+    @Benchmark
+    public Object put_existing() {
+        String k = keys[next++ % size];
+        return dict.put(k, k);
+    }
+
+    @Benchmark
+    public PyDict put_new() {
+        // Build a dictionary the size of the one under test.
+        PyDict d = Py.dict();
+        for (String k : keys) { d.put(k, k); }
+        return d;
+    }
+
+    @Benchmark
+    public void iterate_entries(Blackhole bh) {
+        for (Map.Entry<Object, Object> e : dict.entrySet()) {
+            bh.consume(e.getKey());
+            bh.consume(e.getValue());
+        }
+    }
+
+    @Benchmark
+    public void iterate_keys(Blackhole bh) {
+        for (Object k : dict.keySet()) { bh.consume(k); }
+    }
+
+    @Benchmark
+    public void forEach_entries(Blackhole bh) {
+        dict.forEach((k, v) -> { bh.consume(k); bh.consume(v); });
+    }
+
+    @Benchmark
+    public Object[] snapshot_keys() { return dict.keyArray(); }
+
+    @Benchmark
+    public long stream_values() {
+        return dict.values().stream().mapToInt(v -> (Integer)v).sum();
+    }
+}
@@ -0,0 +1,95 @@
+package example.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import example.core.Interp;
+
+/**
+ * The operations of {@link Interp} on built-in types, a type defined in
+ * Java and a function in a {@code JavaModule}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class DispatchBench {
+
+    Interp interp;
+
+    // Not final, so the JIT cannot treat them as constant.
+    Object i = 42, j = 9, big = 1L << 40;
+    BenchType bt;
+    Object foo;
+    BenchModule unbound;
+    int[] ints = new int[100_000];
+
+    @Setup
+    public void setup() {
+        interp = new Interp();
+        bt = new BenchType(3);
+        BenchModule m = new BenchModule();
+        interp.addModule(m);
+        foo = m.getDict().get("foo");
+        // A module whose functions have not been bound.
+        unbound = new BenchModule();
+        interp.addModule(unbound);
+        for (int k = 0; k < ints.length; k++) { ints[k] = k % 100; }
+    }
+
+    @Benchmark
+    public Object neg_int() { return interp.neg(i); }
+
+    @Benchmark
+    public Object neg_long() { return interp.neg(big); }
+
+    @Benchmark
+    public Object add_int() { return interp.add(i, j); }
+
+    @Benchmark
+    public Object add_long() { return interp.add(big, i); }
+
+    @Benchmark
+    public Object str_int() { return interp.str(i); }
+
+    @Benchmark
+    public Object str_myType() { return interp.str(bt); }
+
+    @Benchmark
+    public Object callMethod_myType_noArg() {
+        return interp.callMethod(bt, "get_content");
+    }
+
+    @Benchmark
+    public Object callMethod_myType_oneArg() {
+        return interp.callMethod(bt, "set_content", i);
+    }
+
+    @Benchmark
+    public Object call_moduleFunction() { return interp.call(foo, i); }
+
+    @Benchmark
+    public Object[] loop_moduleFunction() {
+        Object[] r = new Object[ints.length];
+        for (int k = 0; k < ints.length; k++) {
+            r[k] = interp.call(foo, ints[k]);
+        }
+        return r;
+    }
+
+    @Benchmark
+    public Object[] map_moduleFunction() { return interp.map(foo, ints); }
+
+    @Benchmark
+    public Object invoke_moduleFunction() {
+        return unbound.invoke("foo", i);
+    }
+}
@@ -0,0 +1,75 @@
+package example.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import example.core.Interp;
+import example.runtime.PyMethodDescr;
+
+/**
+ * Calls through a method descriptor and a built-in function, where the
+ * handle is read from a field, compared between the method handles
+ * formed by default ({@link Handles}) and the generated invokers
+ * enabled by {@code example.hiddenInvokers} ({@link Hidden}). The
+ * setting is read when the types are registered, so each needs its own
+ * fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public abstract class InvokerBench {
+
+    Interp interp;
+
+    // Not final, so the JIT cannot treat them as constant.
+    Object i = 42;
+    BenchType bt;
+    PyMethodDescr getContent, setContent;
+    Object boundGet;
+    Object foo;
+    Object[] noArgs = {}, oneArg = {i};
+
+    @Setup
+    public void setup() throws Throwable {
+        interp = new Interp();
+        bt = new BenchType(3);
+        getContent = (PyMethodDescr)BenchType.TYPE.lookup("get_content");
+        setContent = (PyMethodDescr)BenchType.TYPE.lookup("set_content");
+        boundGet = getContent.__get__(bt, null);
+        BenchModule m = new BenchModule();
+        interp.addModule(m);
+        foo = m.getDict().get("foo");
+    }
+
+    @Benchmark
+    public Object descr_noArg() throws Throwable {
+        return getContent.call(bt, noArgs);
+    }
+
+    @Benchmark
+    public Object descr_oneArg() throws Throwable {
+        return setContent.call(bt, oneArg);
+    }
+
+    @Benchmark
+    public Object call_boundMethod() { return interp.call(boundGet); }
+
+    @Benchmark
+    public Object call_moduleFunction() { return interp.call(foo, i); }
+
+    /** The default back end: method handles. */
+    @Fork(value = 1, jvmArgsAppend = "-Dexample.hiddenInvokers=false")
+    public static class Handles extends InvokerBench {}
+
+    /** Generated invokers in hidden classes. */
+    @Fork(value = 1, jvmArgsAppend = "-Dexample.hiddenInvokers=true")
+    public static class Hidden extends InvokerBench {}
+}
@@ -0,0 +1,114 @@
+package example.bench;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import example.core.Interp;
+import example.runtime.JavaModule;
+import example.runtime.PyType;
+import example.runtime.PythonRuntime;
+import example.runtime.TypeFactory;
+
+/**
+ * Type resolution by {@link TypeFactory#fromClass(Class)}, the
+ * start-up costs of type registration and module definition, and the
+ * cost of a repeated import.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class RegistryBench {
+
+    TypeFactory factory;
+    Interp interp;
+
+    // Not final, so the JIT cannot treat them as constant.
+    Class<?> registered = Integer.class;
+    Class<?> subclass = BenchModule.class;
+    Class<?> unregistered = StringBuilder.class;
+
+    @Setup
+    public void setup() {
+        factory = PythonRuntime.typeFactory;
+        interp = new Interp();
+        // Ensure the types are registered.
+        if (BenchType.TYPE == null || BenchModule.DEFINITION == null) {
+            throw new IllegalStateException();
+        }
+        // Ensure what we register and define has all its methods.
+        int n = register_type().getDict().size();
+        if (n != 4) {
+            throw new IllegalStateException("Registrant has methods=" + n);
+        }
+        n = new BenchModule(define_module()).getDict().size();
+        if (n != 2) {
+            throw new IllegalStateException("module has methods=" + n);
+        }
+    }
+
+    @Benchmark
+    public PyType fromClass_registered() {
+        return factory.fromClass(registered);
+    }
+
+    @Benchmark
+    public PyType fromClass_subclass() {
+        return factory.fromClass(subclass);
+    }
+
+    @Benchmark
+    public PyType fromClass_unregistered() {
+        return factory.fromClass(unregistered);
+    }
+
+    /** A class to register repeatedly. */
+    static class Registrant {
+        static final Lookup LOOKUP = MethodHandles.lookup();
+
+        @example.runtime.Exposed.PythonMethod
+        static Object __str__(Registrant self) { return "Registrant"; }
+
+        @example.runtime.Exposed.PythonMethod
+        static Object __neg__(Registrant self) { return self; }
+
+        @example.runtime.Exposed.PythonMethod
+        static Object m1(Registrant self, Object a) { return a; }
+
+        @example.runtime.Exposed.PythonMethod
+        static Object m2(Registrant self, Object a, Object b) {
+            return b;
+        }
+    }
+
+    @Benchmark
+    public PyType register_type() {
+        return factory.register("Registrant", Registrant.class,
+                Registrant.LOOKUP);
+    }
+
+    @Benchmark
+    public JavaModule.Definition define_module() {
+        return JavaModule.define("bench_module", BenchModule.class,
+                BenchModule.LOOKUP);
+    }
+
+    @Benchmark
+    public JavaModule new_module() { return new BenchModule(); }
+
+    @Benchmark
+    public JavaModule import_module() {
+        // After the first, an import is a look-up in the interpreter.
+        return interp.importJavaModule(BenchModule.class);
+    }
+}
@@ -0,0 +1,164 @@
+package example.core;
+
+import static example.internal.ClassShorthand.OA;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import example.internal.Linkage;
+import example.runtime.PyException;
+import example.runtime.PyInt;
+
+/**
+ * Application of one callable to every element of an input, in
+ * parallel on the common {@code ForkJoinPool}. We resolve the handle by
+ * which to call the callable once, then divide the input among tasks
+ * until a part is no larger than a threshold, and each task writes its
+ * results into a shared output array.
+ */
+class BulkMap {
+
+    private BulkMap() {}  // no instances
+
+    /**
+     * Apply a callable to each element of an array.
+     *
+     * @param callable to apply
+     * @param inputs to apply it to
+     * @param threshold largest part of the input processed by one task
+     * @return results in the order of the inputs
+     */
+    static Object[] map(Object callable, Object[] inputs, int threshold) {
+        Object[] out = new Object[inputs.length];
+        run(new ObjectMap(unaryHandle(callable), inputs, out,
+                new AtomicReference<>(), threshold, 0, inputs.length));
+        return out;
+    }
+
+    /**
+     * Apply a callable to each element of an array of {@code int}.
+     *
+     * @param callable to apply
+     * @param inputs to apply it to
+     * @param threshold largest part of the input processed by one task
+     * @return results in the order of the inputs
+     */
+    static Object[] map(Object callable, int[] inputs, int threshold) {
+        Object[] out = new Object[inputs.length];
+        run(new IntMap(unaryHandle(callable), inputs, out,
+                new AtomicReference<>(), threshold, 0, inputs.length));
+        return out;
+    }
+
+    /**
+     * Resolve the callable to a handle of type {@code (O)O} taking the
+     * single argument of each call.
+     */
+    private static MethodHandle unaryHandle(Object callable) {
+        try {
+            return Linkage.callHandle(callable).asCollector(OA, 1);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
+    }
+
+    /** Run the root task, then throw the first failure (if any). */
+    private static void run(MapTask root) {
+        if (root.hi - root.lo <= root.threshold) {
+            root.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(root);
+        }
+        Throwable t = root.failure.get();
+        if (t != null) { throw PyException.wrapped(t); }
+    }
+
+    /**
+     * A task that applies the handle to a part of the input. Failures
+     * are collected (rather than thrown through the pool, which may
+     * replace the exception) and stop the remaining work.
+     */
+    private static abstract class MapTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final MethodHandle mh;
+        final Object[] out;
+        final AtomicReference<Throwable> failure;
+        final int threshold, lo, hi;
+
+        MapTask(MethodHandle mh, Object[] out,
+                AtomicReference<Throwable> failure, int threshold,
+                int lo, int hi) {
+            this.mh = mh;
+            this.out = out;
+            this.failure = failure;
+            this.threshold = threshold;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /** The input at index {@code i} as a Python object. */
+        abstract Object input(int i);
+
+        /** A task for the part {@code [lo, hi)} of the same input. */
+        abstract MapTask part(int lo, int hi);
+
+        @Override
+        protected void compute() {
+            if (hi - lo > threshold) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(part(lo, mid), part(mid, hi));
+            } else if (failure.get() == null) {
+                try {
+                    for (int i = lo; i < hi; i++) {
+                        out[i] = mh.invokeExact(input(i));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        }
+    }
+
+    private static class ObjectMap extends MapTask {
+        private static final long serialVersionUID = 1L;
+        private final Object[] in;
+
+        ObjectMap(MethodHandle mh, Object[] in, Object[] out,
+                AtomicReference<Throwable> failure, int threshold,
+                int lo, int hi) {
+            super(mh, out, failure, threshold, lo, hi);
+            this.in = in;
+        }
+
+        @Override
+        Object input(int i) { return in[i]; }
+
+        @Override
+        MapTask part(int lo, int hi) {
+            return new ObjectMap(mh, in, out, failure, threshold, lo, hi);
+        }
+    }
+
+    private static class IntMap extends MapTask {
+        private static final long serialVersionUID = 1L;
+        private final int[] in;
+
+        IntMap(MethodHandle mh, int[] in, Object[] out,
+                AtomicReference<Throwable> failure, int threshold,
+                int lo, int hi) {
+            super(mh, out, failure, threshold, lo, hi);
+            this.in = in;
+        }
+
+        @Override
+        Object input(int i) { return PyInt.valueOf(in[i]); }
+
+        @Override
+        MapTask part(int lo, int hi) {
+            return new IntMap(mh, in, out, failure, threshold, lo, hi);
+        }
+    }
+}
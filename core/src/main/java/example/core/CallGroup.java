@@ -0,0 +1,158 @@
+package example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import example.runtime.PyException;
+
+/**
+ * A group of asynchronous calls in an {@link Interp}, which the owner
+ * submits and then joins as one. If any call fails, or the owner is
+ * interrupted while waiting, or the group is closed before all have
+ * finished, the calls still running are cancelled. The intended use
+ * is: <pre>
+ * try (CallGroup g = interp.newCallGroup()) {
+ *     g.call(f, x);
+ *     g.callMethod(o, "m", y);
+ *     List&lt;Object&gt; results = g.join();
+ * }
+ * </pre>
+ * <p>
+ * Cancellation is best-effort. A call not yet started will not run,
+ * but one already running is only interrupted, and may go on until it
+ * next checks for interruption, after the group has been closed or
+ * {@link #join()} has thrown. A call that must not outlive the group
+ * should respond promptly to interruption.
+ */
+public class CallGroup implements AutoCloseable {
+
+    private final Interp interp;
+
+    /** The calls submitted, in order. Guarded by {@code this}. */
+    private final List<CompletableFuture<Object>> calls =
+            new ArrayList<>();
+
+    /** The first call to fail, if any has. */
+    private volatile Throwable failure;
+
+    /** Whether the group has been closed to new calls. */
+    private boolean closed;
+
+    CallGroup(Interp interp) { this.interp = interp; }
+
+    /**
+     * Submit a call of the object with the given arguments.
+     *
+     * @param o object to call
+     * @param args arguments of the call
+     * @return future result of the call
+     */
+    public CompletableFuture<Object> call(Object o, Object... args) {
+        return add(interp.callAsync(o, args));
+    }
+
+    /**
+     * Submit a call of the method named on the object.
+     *
+     * @param o target object
+     * @param methodName to find the method by
+     * @param args to supply to method (when bound)
+     * @return future result of the call
+     */
+    public CompletableFuture<Object> callMethod(Object o,
+            String methodName, Object... args) {
+        return add(interp.callMethodAsync(o, methodName, args));
+    }
+
+    /**
+     * Wait for all the calls submitted so far, and return their results
+     * in the order of submission. If any call fails, the others are
+     * cancelled and the failure of the first is thrown here.
+     *
+     * @return results of the calls
+     * @throws PyException the failure of the first call to fail, or on
+     *     interruption of the waiting thread
+     * @throws CancellationException if a call was cancelled (other
+     *     than by the group)
+     */
+    public List<Object> join() throws PyException {
+        List<CompletableFuture<Object>> all;
+        synchronized (this) { all = new ArrayList<>(calls); }
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]))
+                    .get();
+        } catch (InterruptedException ie) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+            throw new PyException("interrupted waiting for calls", ie);
+        } catch (ExecutionException | CancellationException e) {
+            throw rethrow(e);
+        }
+        List<Object> results = new ArrayList<>(all.size());
+        for (CompletableFuture<Object> c : all) { results.add(c.join()); }
+        return results;
+    }
+
+    /**
+     * Cancel any calls still running and accept no more calls. This
+     * does not wait for cancelled calls to stop running.
+     */
+    @Override
+    public void close() {
+        synchronized (this) { closed = true; }
+        cancelAll();
+    }
+
+    /** Add a call to the group and watch it for failure. */
+    private CompletableFuture<Object> add(CompletableFuture<Object> c) {
+        synchronized (this) {
+            if (closed) {
+                c.cancel(true);
+                throw new IllegalStateException("call group is closed");
+            }
+            calls.add(c);
+        }
+        c.whenComplete((r, t) -> {
+            if (t != null && !(t instanceof CancellationException)) {
+                failed(t);
+            }
+        });
+        return c;
+    }
+
+    /** Record the first failure and cancel the other calls. */
+    private void failed(Throwable t) {
+        synchronized (this) {
+            if (failure != null) { return; }
+            failure = t;
+        }
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        List<CompletableFuture<Object>> all;
+        synchronized (this) { all = new ArrayList<>(calls); }
+        for (CompletableFuture<Object> c : all) { c.cancel(true); }
+    }
+
+    /**
+     * The exception to throw from {@link #join()} when the group did
+     * not complete normally: the first failure if there was one.
+     */
+    private RuntimeException rethrow(Exception e) {
+        Throwable t = failure;
+        if (t == null) {
+            t = e instanceof ExecutionException ? e.getCause() : e;
+            if (t instanceof CancellationException ce) {
+                // Cancelled from outside, not because of a failure.
+                return ce;
+            }
+        }
+        return PyException.wrapped(
+                t instanceof CompletionException ? t.getCause() : t);
+    }
+}
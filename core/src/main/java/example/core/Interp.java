@@ -2,16 +2,33 @@
 // Licensed to PSF under a contributor agreement.
 package example.core;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import example.internal.ImplUtil;
+import example.internal.Linkage;
 import example.internal.PyTypeImpl;
+import example.internal.RuntimeEvents;
 import example.runtime.JavaModule;
+import example.runtime.MT;
 import example.runtime.PyException;
 import example.runtime.PyInt;
 import example.runtime.PyJavaFunction;
 import example.runtime.PyMethodDescr;
 import example.runtime.PyObject;
 import example.runtime.PyType;
+import example.runtime.ReprBuilder;
+import example.runtime.TypeError;
 
 /**
  * An {@code Interpreter} is the wider context for execution, mainly
@@ -19,20 +36,106 @@ import example.runtime.PyType;
  * objects (somewhat unlike CPython).
  */
 public class Interp {
+
+    /**
+     * The default size of the part of the input to {@link #map} below
+     * which we do not divide the work further. It may be set with the
+     * system property {@code example.mapThreshold}.
+     */
+    private static final int MAP_THRESHOLD =
+            Integer.getInteger("example.mapThreshold", 4096);
+
+    /**
+     * Modules imported into this interpreter by class, each as a future
+     * that completes when the module has been initialised. Importers of
+     * a module wait on its future, not on a lock shared with other
+     * modules.
+     */
+    private final Map<Class<?>, Import> imports =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Modules in this interpreter by name, once initialised, like
+     * Python {@code sys.modules}.
+     */
+    private final Map<String, JavaModule> modules =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Executor for asynchronous calls, or {@code null} until the first
+     * such call if we are to create the default one.
+     */
+    private volatile ExecutorService executor;
+
+    /** Size of part of the input {@link #map} processes in one task. */
+    private volatile int mapThreshold = MAP_THRESHOLD;
+
+    /**
+     * Create an interpreter that will run asynchronous calls on a
+     * thread per call. The threads are virtual threads where the
+     * platform supports them.
+     */
+    public Interp() {}
+
+    /**
+     * Create an interpreter that will run asynchronous calls on the
+     * given executor.
+     *
+     * @param executor on which to run asynchronous calls
+     */
+    public Interp(ExecutorService executor) { this.executor = executor; }
+
     /** Convert {@code o} to a {@code str}. */
     public Object str(Object o) {
-        return invoke("__str__", o);
+        try {
+            return STR.invokeExact(o);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
+    }
+
+    /**
+     * Append the string form of {@code o} to {@code out}, as
+     * {@link #str(Object)} would return it, but without building the
+     * intermediate strings of its contents, and stopping (with "...")
+     * after {@code maxLength} characters.
+     *
+     * @param o object to represent
+     * @param out destination of the text
+     * @param maxLength the most characters to append (before "...")
+     * @throws IllegalArgumentException if {@code maxLength < 0}
+     */
+    public void str(Object o, Appendable out, int maxLength)
+            throws IllegalArgumentException {
+        new ReprBuilder(out, maxLength).appendStr(o);
     }
 
+    /**
+     * Return the Python {@code id()} of an object, an integer unique
+     * among objects alive at the same time.
+     *
+     * @param o object
+     * @return the identity of {@code o}
+     */
+    public long id(Object o) { return ImplUtil.id(o); }
+
     /** Compute -u */
     public Object neg(Object u) {
-        return invoke("__neg__", u);
+        try {
+            return NEG.invokeExact(u);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
     }
 
     /** Compute {@code u + v}. */
     public Object add(Object u, Object v) {
         // We should consult __radd__ here too, but not in the toy.
-        return invoke("__add__", u, v);
+        try {
+            return ADD.invokeExact(u, v);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
     }
 
     public Object call(Object o, Object... args) {
@@ -40,9 +143,14 @@ public class Interp {
          * This looks weird but all our invocations (in the toy) expect
          * an array containing the arguments expected by the called
          * method. The fact that the (single) argument expected by
-         * __call__ is itself an array, does not exempt it.
+         * __call__ is itself an array, does not exempt it. The site
+         * makes that array from its second argument.
          */
-        return invoke("__call__", o, new Object[] {args});
+        try {
+            return CALL.invokeExact(o, (Object)args);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
         /*
          * If we had known o was in fact a PyJavaFunction f we could
          * have short-circuited to invoke its handle directly, but in
@@ -51,52 +159,292 @@ public class Interp {
          */
     }
 
-    private static Object invoke(String name, Object o,
-            Object... args) {
+    /**
+     * Call the object with arguments that may include keyword
+     * arguments. The keyword arguments are the last
+     * {@code kwnames.length} elements of {@code args}, in the same
+     * order as their names in {@code kwnames}. Only built-in functions
+     * and methods accept keyword arguments in the toy.
+     *
+     * @param o object to call
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args} (or
+     *     {@code null} if there are none)
+     * @return result of the call
+     */
+    public Object call(Object o, Object[] args, String[] kwnames) {
+        if (kwnames == null || kwnames.length == 0) {
+            return call(o, args);
+        }
+        RuntimeEvents.Dispatch event =
+                RuntimeEvents.beginDispatch(o, "__call__");
         try {
-            PyType t = PyTypeImpl.of(o);
-            Object v = t.lookup(name);
-            // If the retrieved object is a descriptor, bind it.
-            if (v instanceof PyMethodDescr md) {
-                v = md.__get__(o, null);
-            }
-            if (v instanceof PyJavaFunction f) {
-                return f.getHandle().invoke(args);
-            } else {
-                String msg = String.format("(%s).%s is not callable", o,
-                        name);
-                throw new PyException(msg);
+            if (o instanceof PyJavaFunction f) {
+                return f.call(args, kwnames);
             }
+            throw new TypeError(
+                    "'%s' object does not accept keyword arguments",
+                    PyTypeImpl.of(o).getName());
         } catch (Throwable t) {
             throw PyException.wrapped(t);
+        } finally {
+            RuntimeEvents.end(event);
+        }
+    }
+
+    /**
+     * Call the object once for each element of an array, with that
+     * element as its argument, and return the results. The handle by
+     * which to call the object is resolved once, and the calls are
+     * divided among tasks in the common {@code ForkJoinPool}, so they
+     * may run concurrently and in any order.
+     *
+     * @param callable object to call
+     * @param inputs argument of each call
+     * @return results in the order of the inputs
+     * @throws PyException the failure of a call, after which further
+     *     calls are abandoned
+     */
+    public Object[] map(Object callable, Object[] inputs)
+            throws PyException {
+        return BulkMap.map(callable, inputs, mapThreshold);
+    }
+
+    /**
+     * Call the object once for each element of a list, as
+     * {@link #map(Object, Object[])}.
+     *
+     * @param callable object to call
+     * @param inputs argument of each call
+     * @return results in the order of the inputs
+     * @throws PyException the failure of a call
+     */
+    public Object[] map(Object callable, List<?> inputs)
+            throws PyException {
+        return BulkMap.map(callable, inputs.toArray(), mapThreshold);
+    }
+
+    /**
+     * Call the object once for each element of an {@code int} array,
+     * as {@link #map(Object, Object[])}. Each element is presented to
+     * the callable as a Python {@code int}.
+     *
+     * @param callable object to call
+     * @param inputs argument of each call
+     * @return results in the order of the inputs
+     * @throws PyException the failure of a call
+     */
+    public Object[] map(Object callable, int[] inputs)
+            throws PyException {
+        return BulkMap.map(callable, inputs, mapThreshold);
+    }
+
+    /**
+     * Set the size of the part of the input to {@link #map} below which
+     * we do not divide the work further, that is, the number of calls
+     * made in one task.
+     *
+     * @param threshold number of calls in one task (at least 1)
+     */
+    public void setMapThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold < 1");
+        }
+        this.mapThreshold = threshold;
+    }
+
+    /**
+     * Call the object with the given arguments, asynchronously on the
+     * executor of this interpreter.
+     *
+     * @param o object to call
+     * @param args arguments of the call
+     * @return future result of the call, which fails with a
+     *     {@link PyException} if the call does
+     */
+    public CompletableFuture<Object> callAsync(Object o,
+            Object... args) {
+        return submit(() -> call(o, args));
+    }
+
+    /**
+     * Call the method named on the object, asynchronously on the
+     * executor of this interpreter.
+     *
+     * @param o target object
+     * @param methodName to find the method by
+     * @param args to supply to method (when bound)
+     * @return future result of the call, which fails with a
+     *     {@link PyException} if the call does
+     */
+    public CompletableFuture<Object> callMethodAsync(Object o,
+            String methodName, Object... args) {
+        return submit(() -> callMethod(o, methodName, args));
+    }
+
+    /**
+     * Create a group in which to make asynchronous calls in this
+     * interpreter, and then wait for them all.
+     *
+     * @return a new group
+     */
+    public CallGroup newCallGroup() { return new CallGroup(this); }
+
+    /**
+     * Run the given action on the executor of this interpreter. The
+     * future returned fails with a {@link PyException} if the action
+     * throws, and cancelling it interrupts the action if it has
+     * started.
+     *
+     * @param action to run
+     * @return future result of the action
+     */
+    CompletableFuture<Object> submit(Callable<Object> action) {
+        AsyncCall call = new AsyncCall();
+        call.task = getExecutor().submit(() -> call.run(action));
+        return call;
+    }
+
+    /** The executor for asynchronous calls, created if necessary. */
+    private ExecutorService getExecutor() {
+        ExecutorService e = executor;
+        if (e == null) {
+            synchronized (this) {
+                if ((e = executor) == null) {
+                    executor = e = newDefaultExecutor();
+                }
+            }
         }
+        return e;
     }
 
     /**
-     * Create an instance in this interpreter of the given class, which
-     * must extend {@link JavaModule}. This will fail if a parameterless
+     * Create an executor that runs each task on a new virtual thread
+     * if the platform has them (Java 21 and later). Otherwise, create
+     * a cached pool of daemon threads, so that an idle interpreter
+     * does not keep the JVM alive.
+     */
+    private static ExecutorService newDefaultExecutor() {
+        try {
+            return (ExecutorService)Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "Interp-async");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * A future for an action submitted to the executor, that cancels
+     * the task running the action when it is cancelled.
+     */
+    private static class AsyncCall extends CompletableFuture<Object> {
+        /** The task running the action (set after submission). */
+        volatile Future<?> task;
+
+        /** Run the action in the task and complete with the outcome. */
+        void run(Callable<Object> action) {
+            if (isDone()) { return; }
+            try {
+                complete(action.call());
+            } catch (Throwable t) {
+                completeExceptionally(PyException.wrapped(t));
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> t = task;
+            if (cancelled && t != null) { t.cancel(true); }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Return the instance in this interpreter of the given class, which
+     * must extend {@link JavaModule}, creating and initialising it if
+     * this is the first import. This will fail if a parameterless
      * constructor for {@code cls} is not accessible to Jython, for
      * example if the package of cls is not exported from its module.
+     * <p>
+     * Only one instance is created in each interpreter, and its body
+     * is executed only once. A thread that imports a module while
+     * another is initialising it waits for the outcome, except that
+     * the initialising thread itself receives the partly initialised
+     * module (as in a circular import in Python). If initialisation
+     * fails, the module is forgotten, so that a later import may try
+     * again.
      *
      * @param <JM> the actual type
      * @param cls from which to create an instance
      * @return the instance
      */
     public <JM extends JavaModule> JM importJavaModule(Class<JM> cls) {
+        Import imp = imports.get(cls);
+        if (imp == null) {
+            Import mine = new Import();
+            imp = imports.putIfAbsent(cls, mine);
+            if (imp == null) { return cls.cast(initialise(cls, mine)); }
+        }
+        return cls.cast(imp.await());
+    }
+
+    /**
+     * Create and initialise the module for an {@link Import} this
+     * thread has claimed, and complete it with the outcome.
+     */
+    private JavaModule initialise(Class<? extends JavaModule> cls,
+            Import imp) {
+        imp.initialiser = Thread.currentThread();
+        RuntimeEvents.ModuleImport event = new RuntimeEvents.ModuleImport();
+        event.begin();
+        JavaModule module = null;
+        boolean failed = true;
         try {
-            Constructor<JM> cons = cls.getConstructor();
-            JM module = cons.newInstance();
+            module = (JavaModule)MODULE_CONS.get(cls).invokeExact();
+            imp.partial = module;
             // Should add to sys.path here (in the sys of this module).
             // And then execute the body of the new instance.
-            module.exec();
+            exec(module);
+            modules.put(module.getName(), module);
+            imp.done.complete(module);
+            failed = false;
             return module;
-        } catch (ReflectiveOperationException roe) {
-            String msg = String.format(
-                    "Could not create module from %s", cls.getName());
-            throw new PyException(msg, roe);
+        } catch (Throwable t) {
+            imports.remove(cls, imp);
+            PyException pe = t instanceof PyException e ? e
+                    : new PyException(String.format(
+                            "Could not create module from %s",
+                            cls.getName()), t);
+            imp.done.completeExceptionally(pe);
+            throw pe;
+        } finally {
+            imp.initialiser = null;
+            imp.partial = null;
+            // Commit even if the import failed, so that it is seen.
+            if (event.shouldCommit()) {
+                event.moduleName = module == null ? null : module.getName();
+                event.javaClass = cls;
+                event.failed = failed;
+                event.commit();
+            }
         }
     }
 
+    /**
+     * Return the module of the given name in this interpreter, if it
+     * has been imported or added, or {@code null}.
+     *
+     * @param name of the module
+     * @return the module or {@code null}
+     */
+    public JavaModule getModule(String name) { return modules.get(name); }
+
     /**
      * Add a module instance to this interpreter. The interpreter will
      * complete the instance's initialisation as a Python module,
@@ -107,9 +455,74 @@ public class Interp {
     public void addModule(JavaModule module) {
         // Should add to sys.path here (in the sys of this interpreter).
         // And then execute the body of the new instance.
-        module.exec();
+        exec(module);
+        modules.put(module.getName(), module);
+    }
+
+    /** Execute the body of a module, recording the time taken. */
+    private static void exec(JavaModule module) {
+        RuntimeEvents.ModuleExec event = new RuntimeEvents.ModuleExec();
+        event.begin();
+        boolean failed = true;
+        try {
+            module.exec();
+            failed = false;
+        } finally {
+            if (event.shouldCommit()) {
+                event.moduleName = module.getName();
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /** The progress of the import of one module. */
+    private static class Import {
+        /** Completes when the module is initialised (or fails). */
+        final CompletableFuture<JavaModule> done =
+                new CompletableFuture<>();
+        /** The thread initialising the module, while it does so. */
+        volatile Thread initialiser;
+        /** The module, while it is being initialised. */
+        volatile JavaModule partial;
+
+        /** Wait for the module, unless this thread is initialising it. */
+        JavaModule await() {
+            try {
+                if (!done.isDone()
+                        && initialiser == Thread.currentThread()) {
+                    return partial;
+                }
+                return done.join();
+            } catch (CompletionException ce) {
+                throw PyException.wrapped(ce.getCause());
+            }
+        }
     }
 
+    /**
+     * The parameterless constructor of each module class, as a handle
+     * of type {@code ()JavaModule}, found the first time the class is
+     * imported (by any interpreter).
+     */
+    private static final ClassValue<MethodHandle> MODULE_CONS =
+            new ClassValue<>() {
+                @Override
+                protected MethodHandle computeValue(Class<?> c) {
+                    try {
+                        return MethodHandles.publicLookup()
+                                .findConstructor(c, MT.MODULE_CONS)
+                                .asType(MethodType
+                                        .methodType(JavaModule.class));
+                    } catch (ReflectiveOperationException roe) {
+                        String msg = String.format(
+                                "Could not create module from %s",
+                                c.getName());
+                        throw new PyException(msg, roe);
+                    }
+                }
+            };
+
     /**
      * Call the method named on the object.
      *
@@ -124,9 +537,62 @@ public class Interp {
          * We take a narrow view of acceptable descriptors for now, as
          * we do not yet have a __getattribute__.
          */
-        return invoke(methodName, o, args);
+        MethodHandle site = METHOD_SITES.computeIfAbsent(methodName,
+                n -> Linkage.dynamicInvoker(n, MT.METHOD));
+        try {
+            return site.invokeExact(o, args);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        }
+    }
+
+    /**
+     * Call the method named on the object, with arguments that may
+     * include keyword arguments. The keyword arguments are the last
+     * {@code kwnames.length} elements of {@code args}, in the same
+     * order as their names in {@code kwnames}.
+     *
+     * @param o target object
+     * @param methodName to find the method by
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args} (or
+     *     {@code null} if there are none)
+     * @return result of call
+     */
+    public Object callMethod(Object o, String methodName, Object[] args,
+            String[] kwnames) {
+        if (kwnames == null || kwnames.length == 0) {
+            return callMethod(o, methodName, args);
+        }
+        RuntimeEvents.Dispatch event =
+                RuntimeEvents.beginDispatch(o, methodName);
+        try {
+            return Linkage.invokeGeneric(methodName, o, args, kwnames);
+        } catch (Throwable t) {
+            throw PyException.wrapped(t);
+        } finally {
+            RuntimeEvents.end(event);
+        }
     }
 
+    /*
+     * Call sites for the operations. Each caches the method it finds
+     * for the classes of receiver it meets. Being static final, the JIT
+     * may treat these handles as constant, and inline through them.
+     */
+    private static final MethodHandle STR =
+            Linkage.dynamicInvoker("__str__", MT.UNARY);
+    private static final MethodHandle NEG =
+            Linkage.dynamicInvoker("__neg__", MT.UNARY);
+    private static final MethodHandle ADD =
+            Linkage.dynamicInvoker("__add__", MT.BINARY);
+    private static final MethodHandle CALL =
+            Linkage.dynamicInvoker("__call__", MT.BINARY);
+
+    /** Call sites for {@link #callMethod}, by method name. */
+    private static final Map<String, MethodHandle> METHOD_SITES =
+            new ConcurrentHashMap<>();
+
     /*
      * We reference the type objects of some built-in types to ensure
      * they are registered. Order is delicate.
@@ -0,0 +1,188 @@
+package example.internal;
+
+import static example.internal.ClassShorthand.O;
+import static example.internal.ClassShorthand.OA;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import example.runtime.ArgParser;
+import example.runtime.Invoker;
+import example.runtime.MT;
+
+/**
+ * The adaptation of methods exposed to Python, from the handle on the
+ * method as declared in Java to the handles a descriptor or module
+ * function holds, shared by the definition of types and of modules.
+ * <p>
+ * Adapting each handle separately by {@code asSpreader},
+ * {@code dropArguments} and {@code asType} forms a new chain of
+ * combinators for every method. Instead, we form once, for each
+ * declared type of method and each target type, a "shape": a handle
+ * that takes the method handle as its first argument and invokes it
+ * exactly, with the arguments of the target type spread and cast to
+ * suit. Adapting a method is then only binding it into the shape.
+ * Methods with the same signature (as many in one class will have)
+ * share the shape, and its lambda forms.
+ * <p>
+ * Shapes are cached by the class of the first parameter (the defining
+ * class, in practice) in a {@link ClassValue}, so that they do not keep
+ * that class reachable once it could otherwise be unloaded.
+ */
+public final class Exposer {
+
+    private Exposer() {}  // no instances
+
+    /** Shapes by the pair (declared type, target type). */
+    private static final ClassValue<Map<List<MethodType>, MethodHandle>> //
+    SHAPES = new ClassValue<>() {
+        @Override
+        protected Map<List<MethodType>, MethodHandle>
+                computeValue(Class<?> c) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * A method adapted for exposure, with the handles a descriptor or
+     * module function holds.
+     */
+    public static final class Adapted {
+        /** Name of the method. */
+        public final String name;
+        /** Handle of type {@link MT#METHOD}. */
+        public final MethodHandle method;
+        /**
+         * Handle of type {@link MT#UNARY} or {@link MT#BINARY} if the
+         * method takes zero or one argument after "self", else
+         * {@code null}.
+         */
+        public final MethodHandle fixed;
+        /** Parser of the arguments after "self". */
+        public final ArgParser parser;
+        /**
+         * Generated invoker of the methods of the defining class, or
+         * {@code null} if there is none.
+         */
+        public final Invoker invoker;
+        /** Index of this method in {@link #invoker}. */
+        public final int index;
+
+        private Adapted(String name, MethodHandle method,
+                MethodHandle fixed, ArgParser parser, Invoker invoker,
+                int index) {
+            this.name = name;
+            this.method = method;
+            this.fixed = fixed;
+            this.parser = parser;
+            this.invoker = invoker;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Adapt the method at index {@code i} of the exposed methods of a
+     * defining class, emitting a
+     * {@link RuntimeEvents.MethodExposure} event. If there is a
+     * generated {@link Invoker} for the defining class, the adapted
+     * method refers to it as well as to the handles.
+     *
+     * @param owner name of the type or module, for the event
+     * @param exposure exposed methods of the defining class
+     * @param i index of the method in {@code exposure}
+     * @return the adapted method
+     */
+    public static Adapted expose(String owner, Exposure exposure, int i) {
+        RuntimeEvents.MethodExposure event =
+                new RuntimeEvents.MethodExposure();
+        event.begin();
+        String name = exposure.name(i);
+        Adapted a = adapt(name, exposure.handle(i), exposure.parser(i),
+                exposure.invoker(), i);
+        if (event.shouldCommit()) {
+            event.owner = owner;
+            event.methodName = name;
+            event.commit();
+        }
+        return a;
+    }
+
+    /**
+     * Adapt a method for exposure. The handle on the method has the
+     * parameter types with which it was declared (in Java), the first
+     * being the target ("self" or the module). We form a handle with
+     * signature {@code (O,O[])O} that accepts any positional arguments
+     * the parser accepts, and if the method takes zero or one argument
+     * after the target, a handle of type {@link MT#UNARY} or
+     * {@link MT#BINARY} respectively.
+     *
+     * @param name of the method
+     * @param mh handle on the method as declared
+     * @param parser of the arguments after the target
+     * @param invoker of the methods of the defining class (or
+     *     {@code null})
+     * @param index of this method in {@code invoker}
+     * @return the adapted method
+     */
+    public static Adapted adapt(String name, MethodHandle mh,
+            ArgParser parser, Invoker invoker, int index) {
+        /*
+         * In real life we would need run-time checks and conversion,
+         * but this is just a toy.
+         */
+        MethodType mt = mh.type();
+        int n = mt.parameterCount();
+        assert n > 0;
+        MethodHandle fixed = switch (n) {
+            case 1 -> shape(mt, MT.UNARY).bindTo(mh);
+            case 2 -> shape(mt, MT.BINARY).bindTo(mh);
+            default -> null;
+        };
+        MethodHandle method = parser.adapt(shape(mt, MT.METHOD).bindTo(mh));
+        return new Adapted(name, method, fixed, parser, invoker, index);
+    }
+
+    /**
+     * Return the shape that adapts a handle of type {@code mt} to the
+     * {@code target} type, creating it if necessary. The shape has the
+     * target type with a leading {@code MethodHandle} parameter.
+     *
+     * @param mt declared type of the method
+     * @param target type ({@link MT#METHOD}, {@link MT#UNARY} or
+     *     {@link MT#BINARY})
+     * @return shape into which to bind a method of type {@code mt}
+     */
+    private static MethodHandle shape(MethodType mt, MethodType target) {
+        Map<List<MethodType>, MethodHandle> shapes =
+                SHAPES.get(mt.parameterType(0));
+        List<MethodType> key = List.of(mt, target);
+        MethodHandle shape = shapes.get(key);
+        if (shape == null) {
+            shape = shapes.computeIfAbsent(key, k -> formShape(mt, target));
+        }
+        return shape;
+    }
+
+    /** Form the shape of {@link #shape(MethodType, MethodType)}. */
+    private static MethodHandle formShape(MethodType mt,
+            MethodType target) {
+        // (MH,S,A,B,...)R invoking the MH exactly
+        MethodHandle inv = MethodHandles.exactInvoker(mt);
+        if (target == MT.METHOD) {
+            int n = mt.parameterCount();
+            if (n == 1) {
+                // Add an ignored array argument (no args at run-time).
+                inv = MethodHandles.dropArguments(inv, 2, OA);
+            } else {
+                // We shall receive an array we spread to the args.
+                inv = inv.asSpreader(OA, n - 1);
+            }
+        }
+        return inv.asType(target.insertParameterTypes(0,
+                MethodHandle.class).changeReturnType(O));
+    }
+}
@@ -0,0 +1,366 @@
+package example.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import example.runtime.ArgParser;
+import example.runtime.Exposed.Default;
+import example.runtime.Exposed.PythonMethod;
+import example.runtime.Invoker;
+import example.runtime.PyException;
+
+/**
+ * The methods of a defining class that are annotated for exposure to
+ * Python (by {@link PythonMethod}), each with a way to obtain a method
+ * handle for it.
+ * <p>
+ * Where the build ran the annotation processor over the defining class
+ * {@code p.C}, it will have generated a class {@code p.C_Exposure} with
+ * a static table of the names, arities and parameters of the methods,
+ * and a method that finds each handle by name and type. We use that
+ * table when it exists, as it avoids the cost of reflection on the
+ * defining class. Otherwise we fall back to reflection.
+ */
+public abstract class Exposure {
+
+    /** Suffix of the name of a generated table. */
+    private static final String SUFFIX = "_Exposure";
+
+    private static final MethodType FIND_TYPE = MethodType
+            .methodType(MethodHandle.class, Lookup.class, int.class);
+
+    /** Names of the methods, in the order of their indices. */
+    private final String[] names;
+
+    /** Access to the defining class. */
+    final Lookup lookup;
+
+    /** Invoker of the methods, once we have tried to make it. */
+    private Invoker invoker;
+    private boolean invokerTried;
+
+    private Exposure(String[] names, Lookup lookup) {
+        this.names = names;
+        this.lookup = lookup;
+    }
+
+    /**
+     * Return the exposed methods of the class that is the lookup class
+     * of {@code lookup}.
+     *
+     * @param lookup with private access to the defining class
+     * @return the exposed methods
+     */
+    public static Exposure of(Lookup lookup) {
+        Exposure e = generated(lookup);
+        return e != null ? e : reflected(lookup);
+    }
+
+    /**
+     * Return the exposed methods of the given defining class, using
+     * {@code lookup} for access to it. If the lookup class is not the
+     * defining class, the lookup must be able to obtain private access
+     * to it (as one in the same module can).
+     *
+     * @param definingClass in which to find the methods
+     * @param lookup with access to the defining class
+     * @return the exposed methods
+     * @throws PyException if the lookup cannot access the class
+     */
+    public static Exposure of(Class<?> definingClass, Lookup lookup)
+            throws PyException {
+        if (lookup.lookupClass() != definingClass) {
+            try {
+                lookup = MethodHandles.privateLookupIn(definingClass,
+                        lookup);
+            } catch (IllegalAccessException e) {
+                String msg = String.format(
+                        "Cannot expose methods of %s: due to %s",
+                        definingClass.getName(), e);
+                throw new PyException(msg, e);
+            }
+        }
+        return of(lookup);
+    }
+
+    /** @return number of exposed methods */
+    public int size() { return names.length; }
+
+    /**
+     * Name of the method at index {@code i}.
+     *
+     * @param i index of method
+     * @return name of method
+     */
+    public String name(int i) { return names[i]; }
+
+    /**
+     * Number of parameters of the handle at index {@code i}, including
+     * the target if the method is an instance method.
+     *
+     * @param i index of method
+     * @return number of parameters
+     */
+    public abstract int arity(int i);
+
+    /**
+     * Names of the parameters of the method at index {@code i}, not
+     * including the target, or {@code null} if they are not known.
+     *
+     * @param i index of method
+     * @return names of parameters or {@code null}
+     */
+    abstract String[] parameterNames(int i);
+
+    /**
+     * Defaults of the parameters of the method at index {@code i}, not
+     * including the target, as the text of the {@link Default}
+     * annotation, or {@code null} if no parameter has one.
+     *
+     * @param i index of method
+     * @return defaults (elements {@code null} where there is none)
+     */
+    abstract String[] defaultTexts(int i);
+
+    /**
+     * Form the parser for the arguments of the method at index
+     * {@code i}.
+     *
+     * @param i index of method
+     * @return parser for the arguments of the method
+     * @throws PyException if a default cannot be interpreted
+     */
+    public ArgParser parser(int i) throws PyException {
+        String[] texts = defaultTexts(i);
+        Object[] defaults = null;
+        if (texts != null) {
+            defaults = new Object[texts.length];
+            for (int j = 0; j < texts.length; j++) {
+                if (texts[j] != null) {
+                    defaults[j] = ArgParser.literal(texts[j]);
+                }
+            }
+        }
+        return new ArgParser(names[i], parameterNames(i), defaults,
+                arity(i) - 1);
+    }
+
+    /**
+     * Form a handle on the method at index {@code i}.
+     *
+     * @param i index of method
+     * @return handle on the method
+     * @throws PyException if the handle cannot be formed
+     */
+    public MethodHandle handle(int i) throws PyException {
+        try {
+            return find(i);
+        } catch (ReflectiveOperationException e) {
+            String msg = String.format(
+                    "Cannot expose method %s: due to %s", names[i], e);
+            throw new PyException(msg, e);
+        }
+    }
+
+    /**
+     * Return an {@link Invoker} that calls the methods by index, if
+     * generated invokers are enabled and one can be made for the
+     * defining class, or else {@code null}. Making it forms the handles
+     * of all the methods.
+     *
+     * @return invoker of the methods or {@code null}
+     * @throws PyException if a handle cannot be formed
+     */
+    public Invoker invoker() throws PyException {
+        if (!Invokers.ENABLED) { return null; }
+        synchronized (this) {
+            if (!invokerTried) {
+                invokerTried = true;
+                MethodHandle[] handles = new MethodHandle[size()];
+                for (int i = 0; i < handles.length; i++) {
+                    handles[i] = handle(i);
+                }
+                invoker = Invokers.define(lookup, handles);
+            }
+            return invoker;
+        }
+    }
+
+    /**
+     * Form a handle on the method at index {@code i}.
+     *
+     * @param i index of method
+     * @return handle on the method
+     * @throws ReflectiveOperationException if the handle cannot be
+     *     formed
+     */
+    abstract MethodHandle find(int i)
+            throws ReflectiveOperationException;
+
+    /**
+     * Return the table generated for the lookup class by the annotation
+     * processor, or {@code null} if there is none.
+     */
+    private static Exposure generated(Lookup lookup) {
+        String name = lookup.lookupClass().getName() + SUFFIX;
+        Class<?> table;
+        try {
+            table = lookup.findClass(name);
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            return null;
+        }
+        try {
+            String[] names = (String[])lookup
+                    .findStaticGetter(table, "NAMES", String[].class)
+                    .invokeExact();
+            int[] arities = (int[])lookup
+                    .findStaticGetter(table, "ARITIES", int[].class)
+                    .invokeExact();
+            String[][] parameters = (String[][])lookup
+                    .findStaticGetter(table, "PARAMETERS",
+                            String[][].class)
+                    .invokeExact();
+            String[][] defaults = (String[][])lookup
+                    .findStaticGetter(table, "DEFAULTS", String[][].class)
+                    .invokeExact();
+            MethodHandle find =
+                    lookup.findStatic(table, "find", FIND_TYPE);
+            return new Generated(names, arities, parameters, defaults,
+                    find, lookup);
+        } catch (Throwable t) {
+            String msg = String.format(
+                    "Exposure table %s is invalid: %s", name, t);
+            throw new PyException(msg, t);
+        }
+    }
+
+    /**
+     * Return the exposed methods of the lookup class found by
+     * reflection.
+     */
+    private static Exposure reflected(Lookup lookup) {
+        List<Method> methods = new ArrayList<>();
+        for (Method m : lookup.lookupClass().getDeclaredMethods()) {
+            if (m.getDeclaredAnnotation(PythonMethod.class) != null) {
+                methods.add(m);
+            }
+        }
+        return new Reflected(methods.toArray(new Method[0]), lookup);
+    }
+
+    /** Methods described by a table from the annotation processor. */
+    private static class Generated extends Exposure {
+        private final int[] arities;
+        private final String[][] parameters;
+        private final String[][] defaults;
+        private final MethodHandle find;
+
+        Generated(String[] names, int[] arities, String[][] parameters,
+                String[][] defaults, MethodHandle find, Lookup lookup) {
+            super(names, lookup);
+            this.arities = arities;
+            this.parameters = parameters;
+            this.defaults = defaults;
+            this.find = find;
+        }
+
+        @Override
+        public int arity(int i) { return arities[i]; }
+
+        @Override
+        String[] parameterNames(int i) { return parameters[i]; }
+
+        @Override
+        String[] defaultTexts(int i) { return defaults[i]; }
+
+        @Override
+        MethodHandle find(int i) throws ReflectiveOperationException {
+            try {
+                return (MethodHandle)find.invokeExact(lookup, i);
+            } catch (ReflectiveOperationException | RuntimeException
+                    | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // find declares only ReflectiveOperationException
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    /** Methods discovered by reflection on the defining class. */
+    private static class Reflected extends Exposure {
+        private final Method[] methods;
+
+        Reflected(Method[] methods, Lookup lookup) {
+            super(namesOf(methods), lookup);
+            this.methods = methods;
+        }
+
+        private static String[] namesOf(Method[] methods) {
+            String[] names = new String[methods.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = methods[i].getName();
+            }
+            return names;
+        }
+
+        @Override
+        public int arity(int i) {
+            Method m = methods[i];
+            int n = m.getParameterCount();
+            return Modifier.isStatic(m.getModifiers()) ? n : n + 1;
+        }
+
+        /** Parameters of the method at {@code i} after the target. */
+        private Parameter[] parameters(int i) {
+            Method m = methods[i];
+            Parameter[] p = m.getParameters();
+            int skip = Modifier.isStatic(m.getModifiers()) ? 1 : 0;
+            return Arrays.copyOfRange(p, skip, p.length);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The names are only known if the defining class was compiled
+         * with {@code -parameters}.
+         */
+        @Override
+        String[] parameterNames(int i) {
+            Parameter[] p = parameters(i);
+            String[] names = new String[p.length];
+            for (int j = 0; j < p.length; j++) {
+                if (!p[j].isNamePresent()) { return null; }
+                names[j] = p[j].getName();
+            }
+            return names;
+        }
+
+        @Override
+        String[] defaultTexts(int i) {
+            Parameter[] p = parameters(i);
+            String[] texts = null;
+            for (int j = 0; j < p.length; j++) {
+                Default d = p[j].getAnnotation(Default.class);
+                if (d != null) {
+                    if (texts == null) { texts = new String[p.length]; }
+                    texts[j] = d.value();
+                }
+            }
+            return texts;
+        }
+
+        @Override
+        MethodHandle find(int i) throws IllegalAccessException {
+            return lookup.unreflect(methods[i]);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package example.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ThreadLocalRandom;
+
+import example.runtime.WithId;
+
+/**
+ * The source of Python {@code id()} for all objects. No two live
+ * objects have the same identity, and an object keeps its identity for
+ * as long as it lives. An identity is assigned only when first asked
+ * for.
+ * <p>
+ * An object that implements {@link WithId} (the run-time's own types,
+ * and extension types that choose to) keeps its identity in a field.
+ * Identities of other objects are held in a table keyed weakly by the
+ * object, so that the entry goes when the object does. The table is
+ * split into stripes, chosen by the identity hash of the object, and
+ * each stripe counts its own identities, the stripe number forming the
+ * low bits of each identity, making identities unique without a global
+ * counter.
+ * <p>
+ * The chains of a stripe are never changed once published: entries are
+ * added at the head, and removal or resizing copies what it must. So an
+ * object already in the table is found without locking. Only a miss
+ * takes the lock of the stripe, to look again and add the entry.
+ */
+public final class Identity {
+
+    private Identity() {}  // no instances
+
+    /** Number of bits of the identity that select a stripe. */
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPE_MASK = (1 << STRIPE_BITS) - 1;
+
+    private static final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+    static {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    /**
+     * Return the unique identity of the given object.
+     *
+     * @param o the object
+     * @return the Python {@code id(o)}
+     */
+    public static long id(Object o) {
+        if (o instanceof WithId w) { return w.id(); }
+        int h = System.identityHashCode(o);
+        return stripes[h & STRIPE_MASK].id(o, h);
+    }
+
+    /**
+     * Allocate an identity for a {@link WithId} to keep. It is
+     * different from any other identity this class has issued.
+     *
+     * @return a new identity
+     */
+    public static long newId() {
+        int s = ThreadLocalRandom.current().nextInt() & STRIPE_MASK;
+        return stripes[s].newId();
+    }
+
+    /** One part of the table of identities. */
+    private static final class Stripe {
+
+        /** Index of this stripe, forming the low bits of each id. */
+        private final int index;
+
+        /** Where the collector tells us an object has gone. */
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+        /**
+         * Hash table chained through {@link Entry#next}. Readers may
+         * probe it without the lock. A reader that misses an entry
+         * because of a race looks again under the lock.
+         */
+        private volatile Entry[] table = new Entry[16];
+        private int size;
+
+        /** Number of identities issued by this stripe. */
+        private long count;
+
+        Stripe(int index) { this.index = index; }
+
+        synchronized long newId() {
+            return (++count << STRIPE_BITS) | index;
+        }
+
+        /** Find the identity of {@code o}, or add one. */
+        long id(Object o, int h) {
+            Entry e = find(table, o, h);
+            return e != null ? e.id : add(o, h);
+        }
+
+        /** Find the entry for {@code o} in {@code t} or return null. */
+        private static Entry find(Entry[] t, Object o, int h) {
+            for (Entry e = t[bucket(h, t.length)]; e != null; e = e.next) {
+                if (e.get() == o) { return e; }
+            }
+            return null;
+        }
+
+        /** Look again under the lock and add {@code o} if missing. */
+        private synchronized long add(Object o, int h) {
+            expunge();
+            Entry[] t = table;
+            Entry e = find(t, o, h);
+            if (e != null) { return e.id; }
+            long id = newId();
+            int i = bucket(h, t.length);
+            t[i] = new Entry(o, queue, h, id, t[i]);
+            if (++size > t.length - (t.length >> 2)) { resize(); }
+            return id;
+        }
+
+        /**
+         * Bucket for an identity hash. The low bits chose the stripe,
+         * so are the same for every object in it, and are not used.
+         */
+        private static int bucket(int h, int length) {
+            return (h >>> STRIPE_BITS) & (length - 1);
+        }
+
+        /**
+         * Remove the entries of objects that have been collected. The
+         * entries ahead of one removed are copied, so that a reader
+         * part way along the chain still sees a whole chain.
+         */
+        private void expunge() {
+            Entry[] t = table;
+            for (Object x; (x = queue.poll()) != null;) {
+                Entry dead = (Entry)x;
+                int i = bucket(dead.hash, t.length);
+                Entry head = t[i], e = head;
+                while (e != null && e != dead) { e = e.next; }
+                if (e == null) { continue; }  // replaced by a copy
+                Entry rest = dead.next;
+                for (e = head; e != dead; e = e.next) {
+                    Object o = e.get();
+                    if (o != null) {
+                        rest = new Entry(o, queue, e.hash, e.id, rest);
+                    } else {
+                        size--;  // will not now be found on the queue
+                    }
+                }
+                t[i] = rest;
+                size--;
+            }
+        }
+
+        /** Double the table, copying the entries of live objects. */
+        private void resize() {
+            Entry[] old = table;
+            Entry[] t = new Entry[old.length * 2];
+            int n = 0;
+            for (Entry e : old) {
+                for (; e != null; e = e.next) {
+                    Object o = e.get();
+                    if (o != null) {
+                        int i = bucket(e.hash, t.length);
+                        t[i] = new Entry(o, queue, e.hash, e.id, t[i]);
+                        n++;
+                    }
+                }
+            }
+            size = n;
+            table = t;
+        }
+    }
+
+    /**
+     * Entry in a {@link Stripe}, referring weakly to the object. Fields
+     * are final so that a reader without the lock sees them complete.
+     */
+    private static final class Entry extends WeakReference<Object> {
+        final int hash;
+        final long id;
+        final Entry next;
+
+        Entry(Object o, ReferenceQueue<Object> q, int hash, long id,
+                Entry next) {
+            super(o, q);
+            this.hash = hash;
+            this.id = id;
+            this.next = next;
+        }
+    }
+}
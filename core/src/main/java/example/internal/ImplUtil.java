@@ -39,8 +39,13 @@ public class ImplUtil extends PyUtil {
      * @param o the object
      * @return the Python {@code id(o)}
      */
-    public static int id(Object o) {
-        // For the time being identity means:
-        return System.identityHashCode(o);
-    }
+    public static long id(Object o) { return Identity.id(o); }
+
+    /**
+     * Allocate an identity for an object that keeps its own. It is
+     * different from any other identity issued.
+     *
+     * @return a new identity
+     */
+    public static long newId() { return Identity.newId(); }
 }
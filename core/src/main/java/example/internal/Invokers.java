@@ -0,0 +1,457 @@
+package example.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodHandles.Lookup.ClassOption;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import example.runtime.Invoker;
+import example.runtime.PyException;
+
+/**
+ * Generation of an {@link Invoker} for a defining class, as a hidden
+ * class that is a nestmate of the defining class, and calls each of its
+ * exposed methods directly in bytecode. This is an optional back end,
+ * enabled by the system property {@code example.hiddenInvokers}.
+ * <p>
+ * We write the class file ourselves, as the JDK we build with has no
+ * public API for it, and we take no dependencies. To keep that simple,
+ * the class file has version 49, so that the verifier infers the types
+ * at branch targets and we need not write stack map frames. Each method
+ * of the {@code Invoker} is a {@code tableswitch} on the index, with
+ * one case per method of the defining class, that converts the
+ * arguments from {@code Object} to the declared types, invokes the
+ * method, and boxes the result.
+ */
+public final class Invokers {
+
+    private Invokers() {}  // no instances
+
+    /** Whether to generate invokers at all. */
+    static final boolean ENABLED =
+            Boolean.getBoolean("example.hiddenInvokers");
+
+    /**
+     * Define an invoker for the methods on which the handles are given,
+     * as a hidden class in the lookup class. We return {@code null} if
+     * we cannot name every method in bytecode: if the lookup lacks full
+     * privilege, if a method is not declared by the lookup class, or if
+     * a type in its signature is not accessible there.
+     *
+     * @param lookup with full privilege on the defining class
+     * @param handles direct handles on the exposed methods, by index
+     * @return the invoker, or {@code null}
+     * @throws PyException if the generated class cannot be defined
+     */
+    static Invoker define(Lookup lookup, MethodHandle[] handles)
+            throws PyException {
+        Class<?> host = lookup.lookupClass();
+        if (handles.length == 0 || host.isInterface()
+                || !lookup.hasFullPrivilegeAccess()) {
+            return null;
+        }
+
+        MethodHandleInfo[] infos = new MethodHandleInfo[handles.length];
+        for (int i = 0; i < handles.length; i++) {
+            MethodHandleInfo info;
+            try {
+                info = lookup.revealDirect(handles[i]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            int kind = info.getReferenceKind();
+            if (info.getDeclaringClass() != host
+                    || !(kind == MethodHandleInfo.REF_invokeStatic
+                            || kind == MethodHandleInfo.REF_invokeVirtual
+                            || kind == MethodHandleInfo.REF_invokeSpecial)
+                    || !accessible(lookup, info.getMethodType())) {
+                return null;
+            }
+            infos[i] = info;
+        }
+
+        byte[] bytes = new ClassBytes(host, infos).toByteArray();
+        try {
+            Lookup h = lookup.defineHiddenClass(bytes, true,
+                    ClassOption.NESTMATE);
+            return (Invoker)h.findConstructor(h.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Throwable t) {
+            String msg = String.format("Cannot define invoker for %s",
+                    host.getName());
+            throw new PyException(msg, t);
+        }
+    }
+
+    /** Whether every type in {@code mt} is accessible to the lookup. */
+    private static boolean accessible(Lookup lookup, MethodType mt) {
+        Class<?>[] types = Arrays.copyOf(mt.parameterArray(),
+                mt.parameterCount() + 1);
+        types[types.length - 1] = mt.returnType();
+        for (Class<?> c : types) {
+            while (c.isArray()) { c = c.getComponentType(); }
+            if (!c.isPrimitive()) {
+                try {
+                    lookup.accessClass(c);
+                } catch (IllegalAccessException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** The class file of an invoker. */
+    private static final class ClassBytes {
+
+        // Opcodes we use
+        private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03,
+                BIPUSH = 0x10, SIPUSH = 0x11, ILOAD_1 = 0x1b,
+                ALOAD_0 = 0x2a, ALOAD_2 = 0x2c, ALOAD_3 = 0x2d,
+                AALOAD = 0x32, DUP = 0x59, TABLESWITCH = 0xaa,
+                ARETURN = 0xb0, RETURN = 0xb1, INVOKEVIRTUAL = 0xb6,
+                INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, NEW = 0xbb,
+                ATHROW = 0xbf, CHECKCAST = 0xc0;
+
+        /** Forms of the {@code call} method: see {@link Invoker}. */
+        private static final int ARRAY = 0, UNARY = 1, BINARY = 2;
+
+        private static final String OBJECT = "java/lang/Object";
+        private static final String[] CALL_DESCRIPTORS = {
+                "(ILjava/lang/Object;[Ljava/lang/Object;)"
+                        + "Ljava/lang/Object;",
+                "(ILjava/lang/Object;)Ljava/lang/Object;",
+                "(ILjava/lang/Object;Ljava/lang/Object;)"
+                        + "Ljava/lang/Object;"};
+
+        private final Class<?> host;
+        private final MethodHandleInfo[] infos;
+
+        /** Constant pool entries written so far. */
+        private final ByteArrayOutputStream poolBytes =
+                new ByteArrayOutputStream();
+        private final DataOutputStream pool =
+                new DataOutputStream(poolBytes);
+        /** Index of each constant, keyed by a tag and its content. */
+        private final Map<String, Integer> constants = new HashMap<>();
+        private int poolCount = 1;
+
+        ClassBytes(Class<?> host, MethodHandleInfo[] infos) {
+            this.host = host;
+            this.infos = infos;
+        }
+
+        byte[] toByteArray() {
+            try {
+                return build();
+            } catch (IOException e) {
+                // Writing to a byte array: should not happen.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private byte[] build() throws IOException {
+            String name = internalName(host) + "$$Invoker";
+            int thisClass = classRef(name);
+            int superClass = classRef(OBJECT);
+            int iface = classRef(internalName(Invoker.class));
+
+            // Methods (which fill the constant pool) before the header.
+            ByteArrayOutputStream methodBytes =
+                    new ByteArrayOutputStream();
+            DataOutputStream methods = new DataOutputStream(methodBytes);
+            writeMethod(methods, "<init>", "()V", 1, 1, constructor());
+            for (int form = ARRAY; form <= BINARY; form++) {
+                writeMethod(methods, "call", CALL_DESCRIPTORS[form],
+                        maxStack(), 4, call(form));
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);          // minor version
+            out.writeShort(49);         // major version (Java 5)
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(0x0030);     // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);          // interfaces
+            out.writeShort(iface);
+            out.writeShort(0);          // fields
+            out.writeShort(1 + CALL_DESCRIPTORS.length);
+            methods.flush();
+            methodBytes.writeTo(out);
+            out.writeShort(0);          // attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        /** Write a public method with the given code. */
+        private void writeMethod(DataOutputStream out, String name,
+                String descriptor, int maxStack, int maxLocals,
+                Code code) throws IOException {
+            out.writeShort(0x0001);     // ACC_PUBLIC
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);          // attributes
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code.bytes, 0, code.length);
+            out.writeShort(0);          // exception table
+            out.writeShort(0);          // attributes
+        }
+
+        /** Code of the constructor: {@code super()}. */
+        private Code constructor() {
+            Code c = new Code();
+            c.u1(ALOAD_0);
+            c.u1(INVOKESPECIAL);
+            c.u2(methodRef(OBJECT, "<init>", "()V"));
+            c.u1(RETURN);
+            return c;
+        }
+
+        /**
+         * Code of a {@code call} method in the given form, being a
+         * switch on the index to a call of each method that takes the
+         * number of arguments the form supplies.
+         */
+        private Code call(int form) {
+            int n = infos.length;
+            Code c = new Code();
+            c.u1(ILOAD_1);
+            int sw = c.length;
+            c.u1(TABLESWITCH);
+            while (c.length % 4 != 0) { c.u1(0); }
+            int defaultAt = c.length;
+            c.u4(0);
+            c.u4(0);                    // low
+            c.u4(n - 1);                // high
+            int jumpsAt = c.length;
+            for (int i = 0; i < n; i++) { c.u4(0); }
+
+            for (int i = 0; i < n; i++) {
+                if (fits(form, i)) {
+                    c.patch(jumpsAt + 4 * i, c.length - sw);
+                    invoke(c, form, infos[i]);
+                }
+            }
+
+            // Every other index comes here.
+            int dflt = c.length - sw;
+            c.patch(defaultAt, dflt);
+            for (int i = 0; i < n; i++) {
+                if (!fits(form, i)) {
+                    c.patch(jumpsAt + 4 * i, dflt);
+                }
+            }
+            String ex = "java/lang/IndexOutOfBoundsException";
+            c.u1(NEW);
+            c.u2(classRef(ex));
+            c.u1(DUP);
+            c.u1(ILOAD_1);
+            c.u1(INVOKESPECIAL);
+            c.u2(methodRef(ex, "<init>", "(I)V"));
+            c.u1(ATHROW);
+            return c;
+        }
+
+        /**
+         * Whether the method at {@code i} may be called by the given
+         * form of {@code call}: any by {@code ARRAY}, and by
+         * {@code UNARY} or {@code BINARY} those taking zero or one
+         * argument after the target.
+         */
+        private boolean fits(int form, int i) {
+            int arity = parameters(infos[i]).length;
+            return form == ARRAY || arity == form - UNARY;
+        }
+
+        /** Parameter types (after the target) of a method. */
+        private static Class<?>[] parameters(MethodHandleInfo info) {
+            Class<?>[] p = info.getMethodType().parameterArray();
+            return isStatic(info) ? Arrays.copyOfRange(p, 1, p.length)
+                    : p;
+        }
+
+        private static boolean isStatic(MethodHandleInfo info) {
+            return info.getReferenceKind() //
+                    == MethodHandleInfo.REF_invokeStatic;
+        }
+
+        /** Code to call one method and return its result boxed. */
+        private void invoke(Code c, int form, MethodHandleInfo info) {
+            MethodType mt = info.getMethodType();
+            c.u1(ALOAD_2);
+            checkcast(c, isStatic(info) ? mt.parameterType(0) : host);
+            Class<?>[] params = parameters(info);
+            for (int j = 0; j < params.length; j++) {
+                c.u1(ALOAD_3);
+                if (form == ARRAY) {
+                    push(c, j);
+                    c.u1(AALOAD);
+                }
+                unbox(c, params[j]);
+            }
+            c.u1(isStatic(info) ? INVOKESTATIC : INVOKEVIRTUAL);
+            c.u2(methodRef(internalName(host), info.getName(),
+                    mt.toMethodDescriptorString()));
+            box(c, mt.returnType());
+            c.u1(ARETURN);
+        }
+
+        /** Enough stack for the longest call, or the exception. */
+        private int maxStack() {
+            int max = 3;
+            for (MethodHandleInfo info : infos) {
+                // self, two slots per argument, and array and index
+                max = Math.max(max, 3 + 2 * parameters(info).length);
+            }
+            return max;
+        }
+
+        private static void push(Code c, int j) {
+            if (j <= 5) {
+                c.u1(ICONST_0 + j);
+            } else if (j <= Byte.MAX_VALUE) {
+                c.u1(BIPUSH);
+                c.u1(j);
+            } else {
+                c.u1(SIPUSH);
+                c.u2(j);
+            }
+        }
+
+        /** Convert {@code Object} on the stack to type {@code t}. */
+        private void unbox(Code c, Class<?> t) {
+            if (t.isPrimitive()) {
+                Class<?> w = MethodType.methodType(t).wrap().returnType();
+                checkcast(c, w);
+                c.u1(INVOKEVIRTUAL);
+                c.u2(methodRef(internalName(w), t.getName() + "Value",
+                        "()" + t.descriptorString()));
+            } else {
+                checkcast(c, t);
+            }
+        }
+
+        /** Convert type {@code t} on the stack to {@code Object}. */
+        private void box(Code c, Class<?> t) {
+            if (t == void.class) {
+                c.u1(ACONST_NULL);
+            } else if (t.isPrimitive()) {
+                Class<?> w = MethodType.methodType(t).wrap().returnType();
+                c.u1(INVOKESTATIC);
+                c.u2(methodRef(internalName(w), "valueOf", "("
+                        + t.descriptorString() + ")"
+                        + w.descriptorString()));
+            }
+        }
+
+        private void checkcast(Code c, Class<?> t) {
+            if (t != Object.class) {
+                c.u1(CHECKCAST);
+                c.u2(classRef(internalName(t)));
+            }
+        }
+
+        /** Internal name (or descriptor of an array) for a class. */
+        private static String internalName(Class<?> c) {
+            return c.getName().replace('.', '/');
+        }
+
+        // Constant pool -----------------------------------------------
+
+        private int utf8(String s) {
+            return constant("U" + s, out -> {
+                out.writeByte(1);
+                out.writeUTF(s);
+            });
+        }
+
+        private int classRef(String name) {
+            int u = utf8(name);
+            return constant("C" + name, out -> {
+                out.writeByte(7);
+                out.writeShort(u);
+            });
+        }
+
+        private int methodRef(String owner, String name, String desc) {
+            int c = classRef(owner);
+            int n = utf8(name), d = utf8(desc);
+            int nt = constant("N" + name + " " + desc, out -> {
+                out.writeByte(12);
+                out.writeShort(n);
+                out.writeShort(d);
+            });
+            return constant("M" + owner + "." + name + desc, out -> {
+                out.writeByte(10);
+                out.writeShort(c);
+                out.writeShort(nt);
+            });
+        }
+
+        private interface Entry {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        /** Index of a constant, writing it if it is new. */
+        private int constant(String key, Entry entry) {
+            Integer index = constants.get(key);
+            if (index == null) {
+                try {
+                    entry.write(pool);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = poolCount++;
+                constants.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /** The bytes of the code of a method, as they are written. */
+    private static final class Code {
+        byte[] bytes = new byte[64];
+        int length;
+
+        void u1(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = (byte)b;
+        }
+
+        void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        void u4(int i) {
+            u2(i >> 16);
+            u2(i);
+        }
+
+        /** Overwrite the four bytes at {@code pos}. */
+        void patch(int pos, int i) {
+            for (int k = 3; k >= 0; k--) {
+                bytes[pos + k] = (byte)i;
+                i >>= 8;
+            }
+        }
+    }
+}
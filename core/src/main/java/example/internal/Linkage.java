@@ -0,0 +1,558 @@
+package example.internal;
+
+import static example.internal.ClassShorthand.O;
+import static example.internal.ClassShorthand.OA;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import example.runtime.MT;
+import example.runtime.PyException;
+import example.runtime.PyJavaFunction;
+import example.runtime.PyMethodDescr;
+import example.runtime.PythonRuntime;
+import example.runtime.TypeError;
+
+/**
+ * Support for {@code invokedynamic} call sites that invoke a Python
+ * method by name on their first argument. A site caches the target it
+ * finds for each Java class of receiver it meets (a polymorphic inline
+ * cache), guarded by a test of the class and by the
+ * {@link PyTypeImpl#getSwitchPoint() SwitchPoint} of the type. When it
+ * has met too many classes, the site gives up caching and takes the
+ * full dynamic path every time.
+ * <p>
+ * The same bootstrap method serves code compiled from Python (as the
+ * bootstrap of {@code invokedynamic} instructions) and the run-time
+ * itself (called directly to make a site in a static field).
+ */
+public class Linkage {
+
+    /**
+     * The number of receiver classes a site will cache before it
+     * becomes megamorphic. The default may be set with the system
+     * property {@code example.inlineCacheLimit}.
+     */
+    static final int CACHE_LIMIT =
+            Integer.getInteger("example.inlineCacheLimit", 4);
+
+    private static final Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final TypeFactoryImpl FACTORY =
+            (TypeFactoryImpl)PythonRuntime.typeFactory;
+
+    /** {@code (Class, O)Z} test that an object is of a given class. */
+    private static final MethodHandle IS_CLASS;
+
+    /** {@code (String, O, O[])O} full dynamic path. */
+    private static final MethodHandle INVOKE_GENERIC;
+
+    /** {@code (String, O)O} full dynamic path for a unary site. */
+    private static final MethodHandle INVOKE_UNARY;
+
+    /** {@code (String, O, O)O} full dynamic path for a binary site. */
+    private static final MethodHandle INVOKE_BINARY;
+
+    /** {@code (SpecialMethod, O)O} call through a unary slot. */
+    private static final MethodHandle SLOT_UNARY;
+
+    /** {@code (SpecialMethod, O, O)O} call through a binary slot. */
+    private static final MethodHandle SLOT_BINARY;
+
+    /** {@code (O[])O} entry to re-linking on a cache miss. */
+    private static final MethodHandle FALLBACK;
+
+    /** {@code ()boolean} test whether to time a call. */
+    private static final MethodHandle IN_SAMPLE;
+
+    /** {@code (MethodHandle, String, O[])O} timed call. */
+    private static final MethodHandle TIMED;
+
+    static {
+        try {
+            IS_CLASS = LOOKUP.findStatic(Linkage.class, "isClass",
+                    MethodType.methodType(boolean.class, Class.class,
+                            O));
+            INVOKE_GENERIC = LOOKUP.findStatic(Linkage.class,
+                    "invokeGeneric",
+                    MethodType.methodType(O, String.class, O, OA));
+            INVOKE_UNARY = LOOKUP.findStatic(Linkage.class,
+                    "invokeUnary",
+                    MethodType.methodType(O, String.class, O));
+            INVOKE_BINARY = LOOKUP.findStatic(Linkage.class,
+                    "invokeBinary",
+                    MethodType.methodType(O, String.class, O, O));
+            SLOT_UNARY = LOOKUP.findStatic(Linkage.class, "slotUnary",
+                    MethodType.methodType(O, SpecialMethod.class, O));
+            SLOT_BINARY = LOOKUP.findStatic(Linkage.class,
+                    "slotBinary", MethodType.methodType(O,
+                            SpecialMethod.class, O, O));
+            FALLBACK = LOOKUP.findVirtual(InlineCacheCallSite.class,
+                    "fallback", MethodType.methodType(O, OA));
+            IN_SAMPLE = LOOKUP.findStatic(RuntimeEvents.class,
+                    "inDispatchSample",
+                    MethodType.methodType(boolean.class));
+            TIMED = LOOKUP.findStatic(Linkage.class, "timed",
+                    MethodType.methodType(O, MethodHandle.class,
+                            String.class, OA));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Linkage() {}  // no instances
+
+    /**
+     * Bootstrap a call site that invokes the Python method {@code name}
+     * on the first argument. The site type must be one of:
+     * <ul>
+     * <li>{@code (O,O[])O}, where the array holds the arguments of the
+     * call, or</li>
+     * <li>{@code (O,O,...)O}, where the arguments after the first are
+     * the arguments of the call (possibly none).</li>
+     * </ul>
+     *
+     * @param lookup of the calling class (not used)
+     * @param name of the Python method to call
+     * @param type of the call site
+     * @return the call site
+     */
+    public static CallSite bootstrap(Lookup lookup, String name,
+            MethodType type) {
+        checkSiteType(name, type);
+        return new InlineCacheCallSite(name, type);
+    }
+
+    /**
+     * Create a call site by {@link #bootstrap(Lookup, String, MethodType)}
+     * and return its dynamic invoker. A class that holds this in a
+     * {@code static final} field may call it as a constant. Calls
+     * through the handle are sampled for
+     * {@link RuntimeEvents.Dispatch} events.
+     *
+     * @param name of the Python method to call
+     * @param type of the call site
+     * @return a handle that invokes the current target of the site
+     */
+    public static MethodHandle dynamicInvoker(String name,
+            MethodType type) {
+        MethodHandle site = bootstrap(LOOKUP, name, type).dynamicInvoker();
+        return sampled(name, site);
+    }
+
+    /**
+     * Wrap a handle so that calls in the sample chosen by
+     * {@link RuntimeEvents#inDispatchSample()} are timed as
+     * {@link RuntimeEvents.Dispatch} events. Other calls go straight
+     * to {@code mh}, after only that test, which is cheap while the
+     * events are not enabled.
+     *
+     * @param name of the Python method
+     * @param mh handle to wrap, of a site type
+     * @return wrapped handle of the same type
+     */
+    private static MethodHandle sampled(String name, MethodHandle mh) {
+        MethodType type = mh.type();
+        int n = type.parameterCount();
+        MethodHandle spread = mh.asSpreader(OA, n)
+                .asType(MethodType.methodType(O, OA));
+        MethodHandle timed =
+                MethodHandles.insertArguments(TIMED, 0, spread, name)
+                        .asCollector(OA, n).asType(type);
+        return MethodHandles.guardWithTest(IN_SAMPLE, timed, mh);
+    }
+
+    /**
+     * Invoke a spread handle on the arguments of a call, recording a
+     * {@link RuntimeEvents.Dispatch} event.
+     *
+     * @param spread handle of type {@code (O[])O}
+     * @param name of the Python method
+     * @param args all arguments at the site (receiver first)
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    @SuppressWarnings("unused")
+    private static Object timed(MethodHandle spread, String name,
+            Object[] args) throws Throwable {
+        RuntimeEvents.Dispatch e =
+                RuntimeEvents.startDispatch(args[0], name);
+        try {
+            return (Object)spread.invokeExact(args);
+        } finally {
+            RuntimeEvents.end(e);
+        }
+    }
+
+    /**
+     * The full dynamic path to invoke a named method on an object. This
+     * is the target of a megamorphic site, and of a site where the
+     * attribute found is not something we know how to cache.
+     *
+     * @param name of the method to call
+     * @param o target object
+     * @param args arguments of the call
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object invokeGeneric(String name, Object o,
+            Object[] args) throws Throwable {
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(o);
+        Object v = t.lookup(name);
+        if (v instanceof PyMethodDescr md) {
+            /*
+             * Rather than bind the descriptor to o, only to call and
+             * discard the bound method, call it unbound with o as self.
+             * (Compare CPython LOAD_METHOD and CALL_METHOD.)
+             */
+            return md.call(o, args);
+        } else if (v instanceof PyJavaFunction f) {
+            return f.getHandle().invoke(args);
+        } else {
+            throw notCallable(o, name);
+        }
+    }
+
+    /**
+     * The full dynamic path to invoke a named method on an object, with
+     * arguments that may include keyword arguments. The keyword
+     * arguments are the last {@code kwnames.length} elements of
+     * {@code args}.
+     *
+     * @param name of the method to call
+     * @param o target object
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args}
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object invokeGeneric(String name, Object o,
+            Object[] args, String[] kwnames) throws Throwable {
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(o);
+        Object v = t.lookup(name);
+        if (v instanceof PyMethodDescr md) {
+            return md.call(o, args, kwnames);
+        } else if (v instanceof PyJavaFunction f) {
+            return f.call(args, kwnames);
+        } else {
+            throw notCallable(o, name);
+        }
+    }
+
+    /**
+     * The full dynamic path for a site of type {@link MT#UNARY}. If the
+     * method found has a fixed-arity handle, we call it without making
+     * an argument array.
+     *
+     * @param name of the method to call
+     * @param o target object
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object invokeUnary(String name, Object o)
+            throws Throwable {
+        Object v = PyTypeImpl.of(o).lookup(name);
+        if (v instanceof PyMethodDescr md && md.fixed != null
+                && md.fixed.type() == MT.UNARY) {
+            return md.fixed.invokeExact(o);
+        }
+        return invokeGeneric(name, o, new Object[0]);
+    }
+
+    /**
+     * The full dynamic path for a site of type {@link MT#BINARY}. If the
+     * method found has a fixed-arity handle, we call it without making
+     * an argument array.
+     *
+     * @param name of the method to call
+     * @param o target object
+     * @param w argument of the call
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object invokeBinary(String name, Object o, Object w)
+            throws Throwable {
+        Object v = PyTypeImpl.of(o).lookup(name);
+        if (v instanceof PyMethodDescr md && md.fixed != null
+                && md.fixed.type() == MT.BINARY) {
+            return md.fixed.invokeExact(o, w);
+        }
+        return invokeGeneric(name, o, new Object[] {w});
+    }
+
+    /**
+     * Call the unary special method {@code sm} on {@code o}, reading the
+     * slot of its type by index.
+     *
+     * @param sm special method to call
+     * @param o target object
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object slotUnary(SpecialMethod sm, Object o)
+            throws Throwable {
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(o);
+        return t.getSlot(sm).invokeExact(o);
+    }
+
+    /**
+     * Call the binary special method {@code sm} on {@code o}, reading
+     * the slot of its type by index.
+     *
+     * @param sm special method to call
+     * @param o target object
+     * @param w argument of the call
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public static Object slotBinary(SpecialMethod sm, Object o, Object w)
+            throws Throwable {
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(o);
+        return t.getSlot(sm).invokeExact(o, w);
+    }
+
+    /**
+     * Resolve, once, the handle by which to call the given object, so
+     * that a caller may make many calls without repeating the look-up.
+     * The handle has type {@link MT#FUNCTION}: it takes the array of
+     * arguments of the call. It reflects the definition of
+     * {@code __call__} at the time of this call.
+     *
+     * @param callable object to call
+     * @return handle of type {@link MT#FUNCTION}
+     * @throws Throwable if the handle cannot be resolved
+     */
+    public static MethodHandle callHandle(Object callable)
+            throws Throwable {
+        if (callable instanceof PyJavaFunction f) {
+            // Already bound to its target and of the right type.
+            return f.getHandle();
+        }
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(callable);
+        MethodHandle mh = t.getSlot(SpecialMethod.op_call);
+        return mh.bindTo(callable).asType(MT.FUNCTION);
+    }
+
+    private static PyException notCallable(Object o, String name) {
+        return new TypeError("(%s).%s is not callable", o, name);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean isClass(Class<?> c, Object o) {
+        return o != null && o.getClass() == c;
+    }
+
+    private static void checkSiteType(String name, MethodType type) {
+        boolean ok = type.returnType() == O && type.parameterCount() > 0;
+        for (int i = 0; ok && i < type.parameterCount(); i++) {
+            Class<?> p = type.parameterType(i);
+            ok = p == O || p == OA && i == 1 && type.parameterCount() == 2;
+        }
+        if (!ok) {
+            String msg = String.format(
+                    "Call site type %s not supported for %s", type, name);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Whether a call site of the given type passes the arguments of the
+     * call as an array (rather than as separate arguments).
+     */
+    private static boolean passesArray(MethodType type) {
+        return type.parameterCount() == 2 && type.parameterType(1) == OA;
+    }
+
+    /**
+     * Return the special method a site may call through a slot: one
+     * with the given name and whose slot has the type of the site.
+     *
+     * @param name of the method the site calls
+     * @param type of the call site
+     * @return the special method or {@code null}
+     */
+    private static SpecialMethod slotFor(String name, MethodType type) {
+        SpecialMethod sm = SpecialMethod.forMethodName(name);
+        return sm != null && sm.type == type ? sm : null;
+    }
+
+    /**
+     * Choose and adapt a handle from a method descriptor to the given
+     * site type. When the site and the method have the same fixed arity
+     * ({@link MT#UNARY} or {@link MT#BINARY}), the descriptor's fixed
+     * handle is the target and no argument array is made.
+     *
+     * @param md descriptor of the method
+     * @param type of the call site
+     * @return handle of type {@code type}
+     */
+    private static MethodHandle adapt(PyMethodDescr md, MethodType type) {
+        if (md.fixed != null && md.fixed.type() == type) {
+            return md.fixed;
+        } else {
+            return adapt(md.method, type);
+        }
+    }
+
+    /**
+     * Adapt a handle of type {@code (O,O[])O} (as held by a method
+     * descriptor) to the given site type.
+     *
+     * @param mh handle to adapt
+     * @param type of the call site
+     * @return handle of type {@code type}
+     */
+    private static MethodHandle adapt(MethodHandle mh, MethodType type) {
+        if (passesArray(type)) {
+            return mh;
+        } else {
+            // Collect the arguments after the first (maybe none).
+            return mh.asCollector(OA, type.parameterCount() - 1);
+        }
+    }
+
+    /**
+     * The target for a megamorphic site of the given type: the full
+     * dynamic path, without an argument array if the site has a fixed
+     * arity.
+     *
+     * @param name of the method to call
+     * @param type of the call site
+     * @return handle of type {@code type}
+     */
+    private static MethodHandle megamorphic(String name,
+            MethodType type) {
+        SpecialMethod sm = slotFor(name, type);
+        if (sm != null) {
+            // Read the slot by index: no look-up by name.
+            MethodHandle mh = type == MT.UNARY ? SLOT_UNARY : SLOT_BINARY;
+            return mh.bindTo(sm);
+        } else if (type == MT.UNARY) {
+            return INVOKE_UNARY.bindTo(name);
+        } else if (type == MT.BINARY) {
+            return INVOKE_BINARY.bindTo(name);
+        } else {
+            return adapt(INVOKE_GENERIC.bindTo(name), type);
+        }
+    }
+
+    /**
+     * A call site that caches a target for each Java class of receiver
+     * it meets, up to {@link Linkage#CACHE_LIMIT}, and then falls back
+     * to {@link Linkage#invokeGeneric(String, Object, Object[])}.
+     */
+    static class InlineCacheCallSite extends MutableCallSite {
+
+        /** Name of the method this site invokes. */
+        private final String name;
+
+        /** The slot this site calls through, or {@code null}. */
+        private final SpecialMethod slot;
+
+        /** Handle of the site type that re-links the site. */
+        private final MethodHandle fallback;
+
+        /** Guards of the targets in the current chain. */
+        private final List<SwitchPoint> guards = new ArrayList<>();
+
+        InlineCacheCallSite(String name, MethodType type) {
+            super(type);
+            this.name = name;
+            this.slot = slotFor(name, type);
+            this.fallback = FALLBACK.bindTo(this)
+                    .asCollector(OA, type.parameterCount())
+                    .asType(type);
+            setTarget(fallback);
+        }
+
+        /**
+         * Invoked when no target in the chain accepts the arguments:
+         * find a target for the class of the receiver, add it to the
+         * chain (or become megamorphic), and invoke it.
+         *
+         * @param args all arguments at the site (receiver first)
+         * @return result of the call
+         * @throws Throwable from the called method
+         */
+        @SuppressWarnings("unused")
+        private Object fallback(Object[] args) throws Throwable {
+            Object self = args[0];
+            MethodType type = type();
+            // Take the SwitchPoints before consulting the dictionary.
+            SwitchPoint rsp = FACTORY.getSwitchPoint();
+            PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(self);
+            SwitchPoint sp = t.getSwitchPoint();
+
+            if (slot != null) {
+                // Whatever is in the slot (even the empty handle).
+                MethodHandle mh = t.getSlot(slot);
+                link(self.getClass(), mh, rsp, sp);
+                return mh.invokeWithArguments(args);
+            }
+
+            Object v = t.lookup(name);
+            if (v instanceof PyMethodDescr md) {
+                MethodHandle mh = adapt(md, type);
+                link(self.getClass(), mh, rsp, sp);
+                return mh.invokeWithArguments(args);
+            } else {
+                // Not something we cache: take the full path.
+                return invokeGeneric(name, self, callArgs(args));
+            }
+        }
+
+        /**
+         * Add a guarded target to the chain for the given class, or if
+         * the chain is full, make the site megamorphic. If any target
+         * in the chain has been invalidated, start a new chain.
+         *
+         * @param c class of receiver
+         * @param mh target to use when the receiver has class {@code c}
+         * @param rsp guard on the resolution of {@code c} to a type
+         * @param sp guard on the validity of {@code mh}
+         */
+        private synchronized void link(Class<?> c, MethodHandle mh,
+                SwitchPoint rsp, SwitchPoint sp) {
+            MethodType type = type();
+            MethodHandle chain = getTarget();
+            if (guards.stream().anyMatch(SwitchPoint::hasBeenInvalidated)) {
+                // Some target is stale: discard the whole chain.
+                guards.clear();
+                chain = fallback;
+            } else if (guards.size() >= 2 * CACHE_LIMIT) {
+                // Too many classes: stop caching.
+                setTarget(megamorphic(name, type));
+                return;
+            }
+            MethodHandle test = MethodHandles.dropArguments(
+                    IS_CLASS.bindTo(c), 1,
+                    type.parameterList().subList(1, type.parameterCount()));
+            MethodHandle guarded = rsp.guardWithTest(
+                    sp.guardWithTest(mh, fallback), fallback);
+            setTarget(MethodHandles.guardWithTest(test, guarded, chain));
+            guards.add(rsp);
+            guards.add(sp);
+        }
+
+        /**
+         * The arguments of the call, not including the receiver, as an
+         * array suitable to pass to the method handle of a descriptor.
+         */
+        private Object[] callArgs(Object[] args) {
+            if (passesArray(type())) {
+                return (Object[])args[1];
+            } else {
+                Object[] a = new Object[args.length - 1];
+                System.arraycopy(args, 1, a, 0, a.length);
+                return a;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package example.internal;
+
+/**
+ * A global cache of the results of looking up a name along the MRO of a
+ * type, in the manner of the method cache behind CPython
+ * {@code _PyType_Lookup}. Entries are keyed by the version tag of the
+ * type and the name. A type gets a new version tag whenever its
+ * dictionary, or that of any type on its MRO, changes, so that stale
+ * entries can no longer be found.
+ * <p>
+ * The cache has a fixed number of entries and a new entry simply
+ * replaces any other in the same position. Entries are immutable, so
+ * that threads may read and write the table without locking: a thread
+ * that reads a stale or torn position will see a whole entry that does
+ * not match, and repeat the look-up.
+ */
+// Compare CPython struct type_cache in typeobject.c
+final class MethodCache {
+
+    /** Number of bits in the index of the table. */
+    private static final int BITS = 12;
+
+    /** Mask to reduce a hash to an index in the table. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** The table of entries. */
+    private static final Entry[] TABLE = new Entry[1 << BITS];
+
+    private MethodCache() {}  // no instances
+
+    /**
+     * Look up a name in the MRO of a type, consulting the cache first,
+     * and entering the result in the cache if it was not found there.
+     *
+     * @param type to search
+     * @param tag current version tag of the type
+     * @param name to look up
+     * @return the value found or {@code null}
+     */
+    static Object lookup(PyTypeImpl type, int tag, String name) {
+        int i = (tag * 0x9E3779B9 ^ name.hashCode()) & MASK;
+        Entry e = TABLE[i];
+        if (e != null && e.tag == tag
+                && (e.name == name || e.name.equals(name))) {
+            return e.value;
+        }
+        Object v = type.findInMro(name);
+        TABLE[i] = new Entry(tag, name, v);
+        return v;
+    }
+
+    /** An entry in the table (which may record a failed look-up). */
+    private static class Entry {
+        final int tag;
+        final String name;
+        final Object value;
+
+        Entry(int tag, String name, Object value) {
+            this.tag = tag;
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
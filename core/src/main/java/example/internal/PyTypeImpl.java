@@ -1,29 +1,122 @@
 package example.internal;
 
-import static example.internal.ClassShorthand.OA;
-
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.invoke.MethodType;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.lang.invoke.SwitchPoint;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import example.runtime.Exposed;
 import example.runtime.MT;
-import example.runtime.PyException;
+import example.runtime.Py;
+import example.runtime.PyDict;
 import example.runtime.PyMethodDescr;
+import example.runtime.PyObject;
 import example.runtime.PyType;
+import example.runtime.PyUtil;
 import example.runtime.PythonRuntime;
+import example.runtime.TypeError;
 import example.runtime.WithDict;
+import example.runtime.WithId;
 
 public class PyTypeImpl extends RepresentationImpl
-        implements PyType, WithDict {
+        implements PyType, WithDict, WithId {
+
+    /** The factory in which types are registered. */
+    private static final TypeFactoryImpl FACTORY =
+            (TypeFactoryImpl)PythonRuntime.typeFactory;
+
+    /** Source of version tags. Zero is never issued. */
+    private static final AtomicInteger NEXT_TAG = new AtomicInteger();
 
     private final String name;
 
-    private HashMap<Object, Object> dict = new HashMap<>();
+    private static final VarHandle ID =
+            WithId.idField(MethodHandles.lookup());
+
+    /** Python {@code id()} of this object, or zero until asked for. */
+    private volatile long id;
+
+    /**
+     * The dictionary of the type, specialised to {@code String} keys.
+     * It is replaced, not changed, when an entry is added or removed
+     * (copy on write), so that it may be read without locking.
+     */
+    private volatile PyDict dict = Py.namespace();
+
+    /**
+     * Methods recorded for exposure but not yet added to {@link #dict},
+     * by name (with their index in {@link #exposure}), or {@code null}
+     * when there are none. Guarded by {@code this} when not
+     * {@code null}.
+     */
+    private volatile Map<String, Integer> candidates;
+
+    /** The exposed methods of which the candidates are a subset. */
+    private Exposure exposure;
+
+    /**
+     * Whether the dictionary of this type is fixed. This is set when
+     * the type is registered, unless the defining class is annotated
+     * {@link Exposed.Mutable}, and is never cleared. Only the exposure
+     * of candidate methods adds to the dictionary of a frozen type, and
+     * that is not a change a client can observe, so it invalidates
+     * nothing.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * Valid until the dictionary of this type changes, so that call
+     * sites may cache what they found there.
+     */
+    private volatile SwitchPoint switchPoint = new SwitchPoint();
+
+    /**
+     * Handles implementing the special methods of this type, indexed by
+     * {@link SpecialMethod#ordinal()}. These are computed by look-up
+     * along the MRO, whenever a new {@link #versionTag} is issued.
+     */
+    private MethodHandle[] slots;
+
+    /**
+     * The method resolution order of this type. Types are registered
+     * over a Java class hierarchy, so (in the toy) this is just the
+     * chain of types registered for the superclasses of the
+     * representation class, ending with {@code object}.
+     */
+    private PyTypeImpl[] mro;
+
+    /** The type that is {@code mro[1]} (or {@code null}). */
+    private PyTypeImpl base;
+
+    /** Types that have had this type as {@link #base}. */
+    private final List<WeakReference<PyTypeImpl>> subclasses =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Identifies the state of the dictionaries along the MRO, for
+     * {@link MethodCache}, or is zero if the {@link #mro} and
+     * {@link #slots} must be recomputed.
+     */
+    private volatile int versionTag;
+
+    /** The registration epoch of the factory when we computed the MRO. */
+    private int mroEpoch;
+
+    /** Count of invalidations, to detect one during re-computation. */
+    private int changes;
 
     /** Construct a type with the given representation class. */
     public PyTypeImpl(String name, Class<?> javaClass) {
@@ -31,11 +124,211 @@ public class PyTypeImpl extends RepresentationImpl
         this.name = name;
     }
 
+    @Override
+    public final long id() {
+        long i = id;
+        return i != 0L ? i : PyUtil.assignId(ID, this);
+    }
+
     @Override
     public PyType getType() { return TYPE; }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Any methods that are candidates for lazy exposure are exposed
+     * first, so that the dictionary is complete. If the type is
+     * {@link #isMutable() mutable}, changes made through the returned
+     * map invalidate the {@link #getSwitchPoint() SwitchPoint} of the
+     * type. Otherwise the map is read-only, and an attempt to change it
+     * raises {@link TypeError}.
+     */
     @Override
-    public Map<Object, Object> getDict() { return dict; }
+    public Map<Object, Object> getDict() {
+        if (candidates != null) { exposeAll(); }
+        return new DictView();
+    }
+
+    /**
+     * Whether the dictionary of this type may be changed through
+     * {@link #getDict()}.
+     *
+     * @return {@code true} if the type is mutable
+     */
+    public boolean isMutable() { return !frozen; }
+
+    /**
+     * Make the dictionary of this type read-only. The registry does
+     * this, unless the defining class asks otherwise, before it
+     * publishes the type. From then on, the dictionary is replaced only
+     * to add candidate methods, and readers on any thread see either
+     * the dictionary before that or after it, without locking.
+     */
+    void freeze() { frozen = true; }
+
+    /**
+     * Return a {@code SwitchPoint} that will be invalidated when the
+     * dictionary of this type is next changed. A call site may guard a
+     * target it derived from the dictionary with this. If this type
+     * and those on its MRO are frozen, that happens only if the MRO
+     * changes, which is when a type is registered.
+     *
+     * @return {@code SwitchPoint} valid while the dictionary is not
+     *     changed
+     */
+    public SwitchPoint getSwitchPoint() { return switchPoint; }
+
+    /**
+     * Return the handle implementing the given special method for this
+     * type. If the type does not define the method, this is
+     * {@link SpecialMethod#empty}, which raises an exception.
+     *
+     * @param sm the special method
+     * @return handle of type {@link SpecialMethod#type}
+     */
+    public MethodHandle getSlot(SpecialMethod sm) {
+        if (versionTag == 0 || mroEpoch != FACTORY.getEpoch()) {
+            refresh();
+        }
+        return slots[sm.ordinal()];
+    }
+
+    /**
+     * Return the version tag of this type, computing the MRO and slots
+     * again if they are not valid, which is the case after a change to
+     * the dictionary of this type or a type on its MRO, or after a type
+     * is registered that might change the MRO.
+     *
+     * @return current version tag
+     */
+    private int validTag() {
+        int tag = versionTag;
+        if (tag == 0 || mroEpoch != FACTORY.getEpoch()) {
+            tag = refresh();
+        }
+        return tag;
+    }
+
+    /**
+     * Compute the MRO and slots of this type, and issue a new version
+     * tag. If an invalidation races with this, we compute again.
+     *
+     * @return new version tag
+     */
+    private int refresh() {
+        while (true) {
+            int c, epoch = FACTORY.getEpoch();
+            synchronized (this) { c = changes; }
+
+            PyTypeImpl b = findBase();
+            PyTypeImpl[] m;
+            if (b == null) {
+                m = new PyTypeImpl[] {this};
+            } else {
+                PyTypeImpl[] bm = b.getMro();
+                m = new PyTypeImpl[bm.length + 1];
+                m[0] = this;
+                System.arraycopy(bm, 0, m, 1, bm.length);
+            }
+
+            SpecialMethod[] sms = SpecialMethod.values();
+            MethodHandle[] s = new MethodHandle[sms.length];
+            for (SpecialMethod sm : sms) {
+                s[sm.ordinal()] = sm.handleFor(findInMro(m, sm.methodName));
+            }
+
+            synchronized (this) {
+                if (c == changes) {
+                    if (b != base) {
+                        if (b != null) { b.addSubclass(this); }
+                        base = b;
+                    }
+                    boolean mroChanged =
+                            mro != null && !Arrays.equals(mro, m);
+                    mro = m;
+                    slots = s;
+                    mroEpoch = epoch;
+                    if (mroChanged) { changed(); }
+                    int tag;
+                    while ((tag = NEXT_TAG.incrementAndGet()) == 0) {}
+                    return versionTag = tag;
+                }
+            }
+        }
+    }
+
+    /**
+     * The type registered for the nearest superclass of the
+     * representation class, or {@code object}. Or {@code null} if this
+     * is {@code object}, or if {@code object} is not yet registered.
+     */
+    private PyTypeImpl findBase() {
+        if (javaClass == Object.class) { return null; }
+        Class<?> s = javaClass.getSuperclass();
+        PyTypeImpl b = s == null ? (PyTypeImpl)PyObject.TYPE
+                : (PyTypeImpl)FACTORY.fromClass(s);
+        return b == this ? null : b;
+    }
+
+    /**
+     * Return the MRO of this type.
+     *
+     * @return the MRO (do not modify)
+     */
+    PyTypeImpl[] getMro() {
+        validTag();
+        return mro;
+    }
+
+    /**
+     * Record that {@code sub} has this type as its base, so that it is
+     * invalidated when this type changes.
+     */
+    private void addSubclass(PyTypeImpl sub) {
+        subclasses.removeIf(r -> r.get() == null);
+        subclasses.add(new WeakReference<>(sub));
+    }
+
+    /**
+     * Invalidate the version tag and slots of this type, and all types
+     * that have it on their MRO, because the dictionary has changed.
+     */
+    private void invalidate() {
+        synchronized (this) {
+            changes += 1;
+            versionTag = 0;
+        }
+        changed();
+        for (WeakReference<PyTypeImpl> r : subclasses) {
+            PyTypeImpl sub = r.get();
+            if (sub != null) { sub.invalidate(); }
+        }
+    }
+
+    /**
+     * Set an entry in the dictionary of this type, by replacing the
+     * dictionary with an amended copy.
+     *
+     * @param key in the dictionary
+     * @param v new value (or {@code null} to delete the entry)
+     * @return previous value or {@code null}
+     */
+    private synchronized Object store(Object key, Object v) {
+        PyDict d = new PyDict(dict);
+        Object old = v == null ? d.remove(key) : d.put(key, v);
+        dict = d;
+        return old;
+    }
+
+    /**
+     * Note that the dictionary of this type has changed, invalidating
+     * anything cached from it.
+     */
+    private synchronized void changed() {
+        SwitchPoint old = switchPoint;
+        switchPoint = new SwitchPoint();
+        SwitchPoint.invalidateAll(new SwitchPoint[] {old});
+    }
 
     /** Name of this type. */
     @Override
@@ -46,61 +339,132 @@ public class PyTypeImpl extends RepresentationImpl
 
     /**
      * Add a Python instance method to the type as a
-     * {@link PyMethodDescr} in the type's dictionary. The reflective
-     * description {@code m} of the method gives us the parameter types
-     * with which it was declared (in Java), but these must be adapted
-     * so that the descriptor holds a method handle with signature
-     * {@code (O,O[])O}.
-     *
-     * @param m method to describe
-     * @param lookup access rights to defining class
-     */
-    public void addMethod(Method m, Lookup lookup) {
-        String mName = m.getName();
-        // Declared static with explicit self type S (in toy).
-        assert Modifier.isStatic(m.getModifiers());
-
-        try {
-            // Signature of handle is to be (O,O[])O
-            /*
-             * In real life we would need run-time checks and
-             * conversion, but this is just a toy.
-             */
-            MethodHandle mh = lookup.unreflect(m);
-            MethodType mt = mh.type();
-            int n = mt.parameterCount();
-            assert n > 0;
-            assert mt.parameterType(0).isAssignableFrom(javaClass);
-            if (n == 1) {
-                // Signature is currently (S)T
-                // Add an ignored array argument (no args at run-time).
-                mh = MethodHandles.dropArguments(mh, 1, OA);
-            } else {
-                // Signature is currently (S,A,B,...)T
-                // We shall receive an array we spread to the args.
-                mh = mh.asSpreader(OA, n - 1);
+     * {@link PyMethodDescr} in the type's dictionary, holding the
+     * handles formed by {@link Exposer}.
+     *
+     * @param m the adapted method
+     */
+    public void addMethod(Exposer.Adapted m) {
+        assert m.method.type() == MT.METHOD;
+        PyMethodDescr descr = new PyMethodDescr(this, m.name, m.method,
+                m.fixed, m.parser, m.invoker, m.index);
+        store(m.name, descr);
+    }
+
+    /**
+     * Add the method at index {@code i} of the exposed methods of the
+     * defining class, as by {@link #addMethod(Exposer.Adapted)},
+     * forming its handle now.
+     *
+     * @param exposure exposed methods of the defining class
+     * @param i index of the method in {@code exposure}
+     */
+    public void addMethod(Exposure exposure, int i) {
+        addMethod(Exposer.expose(name, exposure, i));
+    }
+
+    /**
+     * Record a Python instance method of the type for exposure on the
+     * first look-up of its name. Only then will it be added to the
+     * dictionary as if by {@link #addMethod(Exposure, int)}. This
+     * defers the cost of forming a method handle, until we know it is
+     * needed.
+     *
+     * @param exposure exposed methods of the defining class
+     * @param i index of the method in {@code exposure}
+     */
+    public synchronized void addCandidate(Exposure exposure, int i) {
+        if (candidates == null) { candidates = new HashMap<>(); }
+        candidates.put(exposure.name(i), i);
+        this.exposure = exposure;
+    }
+
+    /**
+     * Expose the candidate method of the given name, if it has not
+     * already been exposed, and return the dictionary entry. Only one
+     * thread will build the descriptor: others wait for it.
+     *
+     * @param name to look up
+     * @return dictionary entry or null
+     */
+    private synchronized Object exposeCandidate(String name) {
+        Object v = dict.get(name);
+        if (v == null && candidates != null) {
+            Integer i = candidates.remove(name);
+            if (i != null) {
+                addMethod(exposure, i);
+                v = dict.get(name);
+            }
+            if (candidates.isEmpty()) { dropCandidates(); }
+        }
+        return v;
+    }
+
+    /** Expose all remaining candidate methods. */
+    private synchronized void exposeAll() {
+        if (candidates != null) {
+            for (Integer i : candidates.values()) {
+                addMethod(exposure, i);
             }
-            mh = mh.asType(MT.METHOD);
-            PyMethodDescr descr = new PyMethodDescr(this, mName, mh);
-            dict.put(mName, descr);
-        } catch (IllegalAccessException e) {
-            String msg = String.format(
-                    "Cannot expose method %s.%s: due to %s", name,
-                    mName, e);
-            throw new PyException(msg, e);
+            dropCandidates();
         }
     }
 
+    /** Forget the candidates when all have been exposed. */
+    private void dropCandidates() {
+        candidates = null;
+        exposure = null;
+    }
+
     /**
-     * Look for a name, returning the entry directly from the
-     * dictionary. (No MRO in this toy version.)
+     * Look for a name along the MRO, returning the first entry found in
+     * the dictionary of a type. The result is cached globally against
+     * the version tag of this type, so that repeated look-ups do not
+     * walk the MRO.
      *
      * @param name to look up
      * @return dictionary entry or null
      */
     // Compare CPython _PyType_Lookup in typeobject.c
     @Override
-    public Object lookup(String name) { return dict.get(name); }
+    public Object lookup(String name) {
+        return MethodCache.lookup(this, validTag(), name);
+    }
+
+    /**
+     * Look for a name along the MRO, without consulting the cache.
+     *
+     * @param name to look up
+     * @return dictionary entry or null
+     */
+    Object findInMro(String name) {
+        return findInMro(getMro(), name);
+    }
+
+    private static Object findInMro(PyTypeImpl[] mro, String name) {
+        for (PyTypeImpl t : mro) {
+            Object v = t.lookupOwn(name);
+            if (v != null) { return v; }
+        }
+        return null;
+    }
+
+    /**
+     * Look for a name in the dictionary of this type only. If the name
+     * is that of a method not yet exposed, it is exposed now.
+     *
+     * @param name to look up
+     * @return dictionary entry or null
+     */
+    private Object lookupOwn(String name) {
+        // Read candidates first: exposure stores before dropping them.
+        Map<String, Integer> c = candidates;
+        Object v = dict.get(name);
+        if (v == null && c != null) {
+            v = exposeCandidate(name);
+        }
+        return v;
+    }
 
     public static PyType TYPE =
             register("type", MethodHandles.lookup());
@@ -108,6 +472,101 @@ public class PyTypeImpl extends RepresentationImpl
     @Override
     public String toString() { return "<class '" + name + "'>"; }
 
+    /**
+     * The view of the type dictionary returned by {@link #getDict()}.
+     * It notes every change so that it may be signalled to call sites,
+     * or refuses the change if the type is frozen.
+     */
+    private class DictView extends AbstractMap<Object, Object> {
+
+        @Override
+        public Object get(Object key) { return dict.get(key); }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return dict.containsKey(key);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            checkMutable(key);
+            Object old = store(key, Objects.requireNonNull(value));
+            invalidate();
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            checkMutable(key);
+            Object old = store(key, null);
+            if (old != null) { invalidate(); }
+            return old;
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() { return dict.size(); }
+            };
+        }
+
+        /**
+         * Iterator on the dictionary as it was when iteration began. The
+         * dictionary is copied on write, so changes made through
+         * {@link #remove()} and {@code Entry.setValue}, which go through
+         * {@link DictView#remove(Object)} and
+         * {@link DictView#put(Object, Object)}, do not disturb it.
+         */
+        private class EntryIterator
+                implements Iterator<Entry<Object, Object>> {
+
+            private final Iterator<Entry<Object, Object>> entries =
+                    dict.entrySet().iterator();
+
+            /** Key of the entry last returned or {@code null}. */
+            private Object last;
+
+            @Override
+            public boolean hasNext() { return entries.hasNext(); }
+
+            @Override
+            public Entry<Object, Object> next() {
+                Entry<Object, Object> e = entries.next();
+                last = e.getKey();
+                return new SimpleEntry<>(e) {
+                    @Override
+                    public Object setValue(Object value) {
+                        DictView.this.put(getKey(), value);
+                        return super.setValue(value);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) { throw new IllegalStateException(); }
+                DictView.this.remove(last);
+                last = null;
+            }
+        }
+
+        /** Raise {@link TypeError} if the type is frozen. */
+        private void checkMutable(Object key) throws TypeError {
+            if (frozen) {
+                throw new TypeError(
+                        "cannot set '%s' attribute of immutable type '%s'",
+                        key, name);
+            }
+        }
+    }
+
     // TypeFactory interface -----------------------------------------
 
     /**
@@ -0,0 +1,188 @@
+package example.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events emitted by the run-time. While an event
+ * type is not enabled in a recording, creating and committing an
+ * instance does nothing the JIT cannot remove, so the events may be
+ * left in place on hot paths. Each event type carries a default
+ * threshold, so that a recording with default settings shows only the
+ * slow cases.
+ * <p>
+ * Dispatch is too frequent to record every call, even above a
+ * threshold, so only a sample of calls are timed: one in
+ * {@code example.dispatchSampleInterval} (default 1024) on average.
+ * Call sites made by {@link Linkage#dynamicInvoker(String,
+ * java.lang.invoke.MethodType)}, through which the interpreter invokes
+ * operations and calls, take the sample, as does the interpreter on
+ * paths that do not go through a site.
+ */
+public final class RuntimeEvents {
+
+    private RuntimeEvents() {}  // no instances
+
+    /** Category of all our events. */
+    private static final String PYTHON = "Python";
+
+    /** One in this many dispatches is a candidate for recording. */
+    private static final int SAMPLE_INTERVAL = Math.max(1,
+            Integer.getInteger("example.dispatchSampleInterval", 1024));
+
+    /** An instance on which to ask whether dispatch is enabled. */
+    private static final Dispatch DISPATCH = new Dispatch();
+
+    /**
+     * Whether dispatch events are enabled and this call is in the
+     * sample. This is the only cost of sampling while they are not.
+     *
+     * @return whether to time this call
+     */
+    public static boolean inDispatchSample() {
+        return DISPATCH.isEnabled() && ThreadLocalRandom.current()
+                .nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    /**
+     * Return an event begun for a dispatch on {@code self} if dispatch
+     * events are enabled and this call is in the sample, or
+     * {@code null}. The caller should complete the event by
+     * {@link #end(Dispatch)}.
+     *
+     * @param self target of the call
+     * @param methodName name of the method called
+     * @return begun event or {@code null}
+     */
+    public static Dispatch beginDispatch(Object self, String methodName) {
+        return inDispatchSample() ? startDispatch(self, methodName) : null;
+    }
+
+    /**
+     * Return an event begun for a dispatch on {@code self}, for a call
+     * already chosen by {@link #inDispatchSample()}. The caller should
+     * complete the event by {@link #end(Dispatch)}.
+     *
+     * @param self target of the call
+     * @param methodName name of the method called
+     * @return begun event
+     */
+    static Dispatch startDispatch(Object self, String methodName) {
+        Dispatch e = new Dispatch();
+        e.typeName = PyTypeImpl.of(self).getName();
+        e.methodName = methodName;
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Complete an event returned by
+     * {@link #beginDispatch(Object, String)}, which may be
+     * {@code null}.
+     *
+     * @param e the event or {@code null}
+     */
+    public static void end(Dispatch e) {
+        if (e != null) { e.commit(); }
+    }
+
+    /** Registration of a Python type. */
+    @Name("example.TypeRegistration")
+    @Label("Type Registration")
+    @Category(PYTHON)
+    @Description("Registration of a Python type defined in Java")
+    @Threshold("0 ms")
+    public static class TypeRegistration extends Event {
+        @Label("Type")
+        public String typeName;
+        @Label("Java Class")
+        public Class<?> javaClass;
+        @Label("Methods")
+        @Description("Number of methods annotated for exposure")
+        public int methodCount;
+        @Label("Exposed Lazily")
+        @Description("Number of those deferred to first look-up")
+        public int lazyCount;
+        @Label("Mutable")
+        @Description("Whether the dictionary may change after registration")
+        public boolean mutable;
+    }
+
+    /** Exposure of a method in a type or module. */
+    @Name("example.MethodExposure")
+    @Label("Method Exposure")
+    @Category(PYTHON)
+    @Description("Forming the handles of a method exposed to Python")
+    @Threshold("10 us")
+    @StackTrace(false)
+    public static class MethodExposure extends Event {
+        @Label("Owner")
+        @Description("Name of the type or module")
+        public String owner;
+        @Label("Method")
+        public String methodName;
+    }
+
+    /** Import of a module into an interpreter. */
+    @Name("example.ModuleImport")
+    @Label("Module Import")
+    @Category(PYTHON)
+    @Description("Creation and initialisation of a module instance")
+    @Threshold("1 ms")
+    public static class ModuleImport extends Event {
+        @Label("Module")
+        public String moduleName;
+        @Label("Java Class")
+        public Class<?> javaClass;
+        @Label("Failed")
+        @Description("Whether creation or initialisation threw")
+        public boolean failed;
+    }
+
+    /** Execution of the body of a module. */
+    @Name("example.ModuleExec")
+    @Label("Module Exec")
+    @Category(PYTHON)
+    @Description("Execution of the body of a module instance")
+    @Threshold("1 ms")
+    public static class ModuleExec extends Event {
+        @Label("Module")
+        public String moduleName;
+        @Label("Failed")
+        @Description("Whether execution of the body threw")
+        public boolean failed;
+    }
+
+    /** A call made through the interpreter (sampled). */
+    @Name("example.Dispatch")
+    @Label("Dispatch")
+    @Category(PYTHON)
+    @Description("A sampled call of a Python method or callable")
+    @Threshold("20 us")
+    public static class Dispatch extends Event {
+        @Label("Type")
+        @Description("Type of the target object")
+        public String typeName;
+        @Label("Method")
+        public String methodName;
+    }
+
+    /** Wrapping of a Java exception as a Python one. */
+    @Name("example.ExceptionWrap")
+    @Label("Exception Wrap")
+    @Category(PYTHON)
+    @Description("A Java exception wrapped as a Python SystemError")
+    public static class ExceptionWrap extends Event {
+        @Label("Exception Class")
+        public Class<?> exceptionClass;
+        @Label("Message")
+        public String message;
+    }
+}
@@ -0,0 +1,151 @@
+package example.internal;
+
+import static example.internal.ClassShorthand.O;
+import static example.internal.ClassShorthand.OA;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import example.runtime.MT;
+import example.runtime.PyMethodDescr;
+import example.runtime.ReprBuilder;
+import example.runtime.TypeError;
+
+/**
+ * The special methods for which a type holds a slot, in the spirit of
+ * the {@code tp_*} fields of a CPython type object. The slot holds a
+ * handle of a fixed {@code MethodType} that implements the method for
+ * the type, so that an operation may find it by index rather than by
+ * a look-up by name in the dictionary of the type.
+ * <p>
+ * A slot is never {@code null}: when the type does not define the
+ * method, it holds a shared handle ({@link #empty}) that raises a
+ * {@link TypeError}.
+ */
+public enum SpecialMethod {
+
+    /** Defines {@link PyTypeImpl} slot for {@code __str__}. */
+    op_str(MT.UNARY),
+    /**
+     * Defines {@link PyTypeImpl} slot for {@code __str_into__}, a
+     * variant of {@code __str__} that appends to a
+     * {@link ReprBuilder} (the second argument), and returns nothing.
+     */
+    op_str_into(MT.BINARY),
+    /** Defines {@link PyTypeImpl} slot for {@code __neg__}. */
+    op_neg(MT.UNARY),
+    /** Defines {@link PyTypeImpl} slot for {@code __add__}. */
+    op_add(MT.BINARY),
+    /**
+     * Defines {@link PyTypeImpl} slot for {@code __call__}. The second
+     * argument is the array of arguments of the call.
+     */
+    op_call(MT.BINARY);
+
+    /** Name of the method in Python, e.g. "__str__". */
+    public final String methodName;
+
+    /** Type of the handle in the slot. */
+    public final MethodType type;
+
+    /** Handle in the slot when the type does not define the method. */
+    public final MethodHandle empty;
+
+    /** Look-up of the special method by its Python name. */
+    private static final Map<String, SpecialMethod> BY_NAME =
+            new HashMap<>();
+
+    static {
+        for (SpecialMethod sm : values()) {
+            BY_NAME.put(sm.methodName, sm);
+        }
+    }
+
+    SpecialMethod(MethodType type) {
+        this.methodName = "__" + name().substring(3) + "__";
+        this.type = type;
+        this.empty = Util.empty(this);
+    }
+
+    /**
+     * Return the special method with the given Python name, or
+     * {@code null} if the name is not that of a special method.
+     *
+     * @param name of the method e.g. "__str__"
+     * @return the special method or {@code null}
+     */
+    public static SpecialMethod forMethodName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * Compute the handle this slot should hold in a type where the
+     * dictionary entry for {@link #methodName} is {@code v}.
+     *
+     * @param v entry in the type dictionary (or {@code null})
+     * @return handle of type {@link #type}
+     */
+    MethodHandle handleFor(Object v) {
+        if (v == null) {
+            return empty;
+        } else if (v instanceof PyMethodDescr md) {
+            if (md.fixed != null && md.fixed.type() == type) {
+                return md.fixed;
+            } else {
+                // Collect the arguments after self into an array.
+                int n = type.parameterCount() - 1;
+                return md.method.asCollector(OA, n);
+            }
+        } else {
+            // Something else: leave it to the full dynamic path.
+            return Util.generic(this);
+        }
+    }
+
+    /**
+     * Helpers for the constructor of the {@code enum}, which cannot
+     * refer to the static members of {@code SpecialMethod}.
+     */
+    private static class Util {
+
+        private static final Lookup LOOKUP = MethodHandles.lookup();
+
+        /** Handle in a slot that is not defined by the type. */
+        static MethodHandle empty(SpecialMethod sm) {
+            try {
+                MethodHandle mh = LOOKUP.findStatic(Util.class,
+                        "notImplemented",
+                        MethodType.methodType(O, SpecialMethod.class,
+                                OA));
+                mh = mh.bindTo(sm);
+                return mh.asCollector(OA, sm.type.parameterCount());
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /** Handle in a slot defined by something not a descriptor. */
+        static MethodHandle generic(SpecialMethod sm) {
+            try {
+                MethodHandle mh = LOOKUP.findStatic(Linkage.class,
+                        "invokeGeneric",
+                        MethodType.methodType(O, String.class, O, OA));
+                mh = mh.bindTo(sm.methodName);
+                return mh.asCollector(OA, sm.type.parameterCount() - 1);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unused")
+        private static Object notImplemented(SpecialMethod sm,
+                Object[] args) {
+            throw new TypeError("(%s).%s is not callable", args[0],
+                    sm.methodName);
+        }
+    }
+}
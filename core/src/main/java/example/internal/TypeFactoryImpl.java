@@ -1,23 +1,98 @@
 package example.internal;
 
 import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.lang.invoke.SwitchPoint;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import example.runtime.Exposed;
 import example.runtime.PyObject;
 import example.runtime.PyType;
 import example.runtime.TypeFactory;
-import example.runtime.Exposed.PythonMethod;
 
 public class TypeFactoryImpl implements TypeFactory {
 
-    /** Mapping of Java class to PyType representing it. */
-    private Map<Class<?>, PyTypeImpl> reg = new HashMap<>();
+    /**
+     * Whether to defer the exposure of methods until the first look-up
+     * of their name. The default is {@code true}, but may be set
+     * {@code false} with the system property
+     * {@code example.lazyExposure}.
+     */
+    private static final boolean LAZY_EXPOSURE = Boolean.parseBoolean(
+            System.getProperty("example.lazyExposure", "true"));
+
+    /**
+     * Types registered but not yet claimed by {@link #registered}. An
+     * entry lives here only for the duration of a call to
+     * {@link #register(String, Class, Lookup)}, so that the map holds
+     * no long-term reference to any class. It is removed only once
+     * {@link #registered} holds the type, so that an enquiry racing with
+     * the registration cannot consume it.
+     */
+    private final Map<Class<?>, PyTypeImpl> pending =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Mapping of Java class to the {@code PyType} registered for it
+     * (exactly), or {@code null} if no type is registered. Values are
+     * held by the class itself, so a class, its type and its loader may
+     * be collected together.
+     */
+    private final ClassValue<PyTypeImpl> registered =
+            new ClassValue<>() {
+                @Override
+                protected PyTypeImpl computeValue(Class<?> c) {
+                    return pending.get(c);
+                }
+            };
+
+    /**
+     * Mapping of Java class to the {@code PyType} that gives instances
+     * Python semantics, whether registered for that class, inherited
+     * from a Java superclass, or defaulted to {@code object}. The value
+     * records the {@link #epoch} at which it was computed.
+     */
+    private final ClassValue<Resolution> resolved =
+            new ClassValue<>() {
+                @Override
+                protected Resolution computeValue(Class<?> c) {
+                    return resolve(c);
+                }
+            };
+
+    /**
+     * Count of registrations, used to detect that a cached
+     * {@link Resolution} may be out of date because a type has since
+     * been registered for the class or one of its superclasses.
+     */
+    private volatile int epoch;
+
+    /**
+     * Valid until the next registration, which may change the type
+     * resolved for a class, or the MRO of a type.
+     */
+    private volatile SwitchPoint switchPoint = new SwitchPoint();
 
     /** Construct a type factory. */
     public TypeFactoryImpl() {}
 
+    /**
+     * Return the count of registrations so far. When this changes,
+     * anything computed from the registry may be out of date.
+     *
+     * @return count of registrations
+     */
+    int getEpoch() { return epoch; }
+
+    /**
+     * Return a {@code SwitchPoint} that will be invalidated by the next
+     * registration. A call site may guard a target it derived from the
+     * registry with this.
+     *
+     * @return {@code SwitchPoint} valid until the next registration
+     */
+    public SwitchPoint getSwitchPoint() { return switchPoint; }
+
     /**
      * Map a Java class to the Python {@code type} object that gives
      * Python semantics to instances of the class. In the toy
@@ -28,16 +103,13 @@ public class TypeFactoryImpl implements TypeFactory {
      */
     @Override
     public PyType fromClass(Class<?> c) {
-        do {
-            PyTypeImpl t = reg.get(c);
-            if (t != null) {
-                return t;
-            } else {
-                c = c.getSuperclass();
-            }
-        } while (c != null);
-        // c is Object or an interface
-        return PyObject.TYPE;
+        Resolution r = resolved.get(c);
+        while (r.epoch != epoch) {
+            // A registration since r was cached: compute it again.
+            resolved.remove(c);
+            r = resolved.get(c);
+        }
+        return r.type;
     }
 
     /**
@@ -78,17 +150,111 @@ public class TypeFactoryImpl implements TypeFactory {
     @Override
     public PyTypeImpl register(String name, Class<?> javaClass,
             Lookup lookup) {
+        return register(name, javaClass, lookup, new Class<?>[0]);
+    }
+
+    /**
+     * Add a Python type object to the registry for the specified
+     * representation class, and for further classes that the type
+     * adopts as alternative representations of its instances. Unless
+     * the defining class (the lookup class) is annotated
+     * {@link Exposed.Mutable}, the type is frozen before it is
+     * published, so that its dictionary cannot be changed.
+     *
+     * @param name of the type in Python
+     * @param javaClass representation class
+     * @param lookup loan of access rights
+     * @param adopted further representation classes
+     * @return registered type object
+     */
+    @Override
+    public PyTypeImpl register(String name, Class<?> javaClass,
+            Lookup lookup, Class<?>... adopted) {
+        RuntimeEvents.TypeRegistration event =
+                new RuntimeEvents.TypeRegistration();
+        event.begin();
         PyTypeImpl type = new PyTypeImpl(name, javaClass);
-        Class<?> defnClass = lookup.lookupClass();
-        for (Method m : defnClass.getDeclaredMethods()) {
-            PythonMethod pm =
-                    m.getDeclaredAnnotation(PythonMethod.class);
-            if (pm != null) {
-                // m is annotated for exposure.
-                type.addMethod(m, lookup);
+        // The methods annotated for exposure in the defining class.
+        Exposure exposure = Exposure.of(lookup);
+        int lazy = 0;
+        for (int i = 0; i < exposure.size(); i++) {
+            String mName = exposure.name(i);
+            if (LAZY_EXPOSURE
+                    && SpecialMethod.forMethodName(mName) == null) {
+                // Exposed when first needed.
+                type.addCandidate(exposure, i);
+                lazy += 1;
+            } else {
+                // Exposed now (and may fill a slot).
+                type.addMethod(exposure, i);
             }
         }
-        reg.put(javaClass, type);
+        boolean mutable = lookup.lookupClass()
+                .isAnnotationPresent(Exposed.Mutable.class);
+        if (!mutable) { type.freeze(); }
+        publish(javaClass, type);
+        for (Class<?> c : adopted) { publish(c, type); }
+        if (event.shouldCommit()) {
+            event.typeName = name;
+            event.javaClass = javaClass;
+            event.methodCount = exposure.size();
+            event.lazyCount = lazy;
+            event.mutable = mutable;
+            event.commit();
+        }
         return type;
     }
+
+    /**
+     * Make the given type the one registered for {@code javaClass}, and
+     * cause any resolution cached before now to be recomputed.
+     *
+     * @param javaClass representation class
+     * @param type to register
+     */
+    private synchronized void publish(Class<?> javaClass,
+            PyTypeImpl type) {
+        pending.put(javaClass, type);
+        // Discard any (null) value computed before registration.
+        registered.remove(javaClass);
+        registered.get(javaClass);
+        pending.remove(javaClass);
+        // Resolutions cached until now may be wrong.
+        epoch += 1;
+        SwitchPoint old = switchPoint;
+        switchPoint = new SwitchPoint();
+        SwitchPoint.invalidateAll(new SwitchPoint[] {old});
+    }
+
+    /**
+     * Compute the type for a class by the rule in
+     * {@link #fromClass(Class)}, using the cached resolution of the
+     * superclass so that only the first enquiry walks the hierarchy.
+     *
+     * @param c class on which operations are required
+     * @return resolution and epoch for which it is valid
+     */
+    private Resolution resolve(Class<?> c) {
+        // Read the epoch first so a racing registration is not missed.
+        int e = epoch;
+        PyTypeImpl t = registered.get(c);
+        if (t == null) {
+            Class<?> s = c.getSuperclass();
+            // c is Object or an interface if s is null
+            t = s == null ? (PyTypeImpl)PyObject.TYPE
+                    : (PyTypeImpl)fromClass(s);
+        }
+        return new Resolution(t, e);
+    }
+
+    /** The {@code type} resolved for a class and when we did it. */
+    private static class Resolution {
+        final PyTypeImpl type;
+        final int epoch;
+
+        Resolution(PyTypeImpl type, int epoch) {
+            this.type = type;
+            this.epoch = epoch;
+        }
+    }
 }
@@ -1,15 +1,24 @@
 package example.runtime;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 import example.internal.PyTypeImpl;
 
 /**
  * Class that may be used as a base for Python objects (but doesn't have
  * to be) to supply some universally needed methods and the type.
  */
-abstract class AbstractPyObject implements WithType {
+abstract class AbstractPyObject implements WithType, WithId {
+
+    private static final VarHandle ID =
+            WithId.idField(MethodHandles.lookup());
 
     private PyTypeImpl type;
 
+    /** Python {@code id()} of this object, or zero until asked for. */
+    private volatile long id;
+
     /**
      * Constructor specifying the Python type, as returned by
      * {@link #getType()}. As this is a base for the implementation of
@@ -19,6 +28,18 @@ abstract class AbstractPyObject implements WithType {
      */
     protected AbstractPyObject(PyTypeImpl type) { this.type = type; }
 
+    /**
+     * Constructor for a subclass that overrides {@link #getType()},
+     * usually to return a type object held statically.
+     */
+    protected AbstractPyObject() { this.type = null; }
+
+    @Override
+    public PyType getType() { return type; }
+
     @Override
-    public PyTypeImpl getType() { return type; }
+    public final long id() {
+        long i = id;
+        return i != 0L ? i : PyUtil.assignId(ID, this);
+    }
 }
@@ -0,0 +1,214 @@
+package example.runtime;
+
+import static example.internal.ClassShorthand.O;
+import static example.internal.ClassShorthand.OA;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The parameters of a method exposed to Python (not including "self"),
+ * by name, and the defaults of those that have them. It is built once,
+ * when the method is exposed, and shared by every call.
+ * <p>
+ * A call presents its arguments as one array, positional arguments
+ * first and then the values of the keyword arguments, and an array of
+ * the keywords in the same order as their values (compare CPython
+ * "vectorcall"). The parser fills an array with one element per
+ * parameter, which is then the argument array of the method handle:
+ * there is no intermediate map. A call that has no keyword arguments
+ * and supplies every parameter need not be parsed at all.
+ */
+// Compare CPython _PyArg_Parser in modsupport.h
+public final class ArgParser {
+
+    /** Name of the method, for messages. */
+    private final String name;
+
+    /**
+     * Names of the parameters, or {@code null} if they are unknown, so
+     * that the method accepts no keyword arguments.
+     */
+    private final String[] names;
+
+    /** Default of each parameter, or {@code null} if it has none. */
+    private final Object[] defaults;
+
+    /** Number of parameters (not counting "self"). */
+    private final int size;
+
+    /**
+     * Create a parser for a method with the given parameters.
+     *
+     * @param name of the method
+     * @param names of the parameters not counting "self", or
+     *     {@code null} to accept only positional arguments
+     * @param defaults of the parameters (elements {@code null} if the
+     *     parameter has no default), or {@code null} if none have one
+     * @param size number of parameters, not counting "self"
+     */
+    public ArgParser(String name, String[] names, Object[] defaults,
+            int size) {
+        assert names == null || names.length == size;
+        assert defaults == null || defaults.length == size;
+        this.name = name;
+        this.names = names;
+        this.defaults = defaults;
+        this.size = size;
+    }
+
+    /**
+     * Create a parser for a method with only positional parameters.
+     *
+     * @param name of the method
+     * @param size number of parameters, not counting "self"
+     */
+    public ArgParser(String name, int size) {
+        this(name, null, null, size);
+    }
+
+    /** @return number of parameters, not counting "self" */
+    public int size() { return size; }
+
+    /**
+     * Interpret the text of a default given by {@link Exposed.Default}
+     * as a Python value. The forms accepted are a decimal integer, and
+     * a string in single or double quotes (without escapes).
+     *
+     * @param text of the default
+     * @return the value
+     * @throws PyException if the text is not in a form we accept
+     */
+    public static Object literal(String text) throws PyException {
+        String s = text.strip();
+        int n = s.length();
+        if (n >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"')
+                && s.charAt(n - 1) == s.charAt(0)) {
+            return s.substring(1, n - 1);
+        }
+        try {
+            return Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            throw new PyException("Cannot interpret default " + text, e);
+        }
+    }
+
+    /**
+     * Return the array of arguments to pass to the method, for a call
+     * with the given arguments and keywords. If the call has no keyword
+     * arguments and supplies every parameter, this is {@code args}
+     * itself, otherwise a new array in which the arguments have been
+     * placed by the position of the parameter they name, and the
+     * defaults supplied for parameters the call omits.
+     *
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args} (or
+     *     {@code null} if there are none)
+     * @return argument per parameter
+     * @throws TypeError if the arguments do not match the parameters
+     */
+    public Object[] parse(Object[] args, String[] kwnames)
+            throws TypeError {
+        int nk = kwnames == null ? 0 : kwnames.length;
+        int np = args.length - nk;
+        if (nk == 0 && np == size) { return args; }
+        if (np > size) {
+            throw new TypeError(
+                    "%s() takes %d positional arguments but %d were given",
+                    name, size, np);
+        }
+
+        Object[] frame = new Object[size];
+        System.arraycopy(args, 0, frame, 0, np);
+
+        // Place each keyword argument by the name of its parameter.
+        for (int k = 0; k < nk; k++) {
+            int j = indexOf(kwnames[k]);
+            if (j < 0) {
+                throw new TypeError(names == null
+                        ? "%s() takes no keyword arguments"
+                        : "%s() got an unexpected keyword argument '%s'",
+                        name, kwnames[k]);
+            } else if (frame[j] != null) {
+                throw new TypeError(
+                        "%s() got multiple values for argument '%s'",
+                        name, names[j]);
+            }
+            frame[j] = args[np + k];
+        }
+
+        // Supply defaults for any parameters not yet filled.
+        for (int j = np; j < size; j++) {
+            if (frame[j] == null) {
+                Object d = defaults == null ? null : defaults[j];
+                if (d == null) {
+                    throw new TypeError(
+                            "%s() missing required argument '%s' (pos %d)",
+                            name, names == null ? "" : names[j], j + 1);
+                }
+                frame[j] = d;
+            }
+        }
+        return frame;
+    }
+
+    /** Index of the parameter of the given name or -1. */
+    private int indexOf(String kw) {
+        if (names != null) {
+            for (int j = 0; j < size; j++) {
+                if (names[j].equals(kw)) { return j; }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adapt a handle of type {@link MT#METHOD}, that expects exactly
+     * one argument per parameter, so that it accepts any positional
+     * arguments this parser accepts. A call that supplies exactly one
+     * argument per parameter still goes directly to {@code method},
+     * after only a test of the length of the argument array.
+     *
+     * @param method handle of type {@link MT#METHOD}
+     * @return handle of type {@link MT#METHOD}
+     */
+    public MethodHandle adapt(MethodHandle method) {
+        assert method.type() == MT.METHOD;
+        MethodHandle test = MethodHandles.dropArguments(
+                MethodHandles.insertArguments(HAS_LENGTH, 1, size), 0, O);
+        MethodHandle parsed = MethodHandles.filterArguments(method, 1,
+                PARSE.bindTo(this));
+        return MethodHandles.guardWithTest(test, method, parsed);
+    }
+
+    /** Parse only positional arguments. */
+    @SuppressWarnings("unused")
+    private Object[] parse(Object[] args) throws TypeError {
+        return parse(args, null);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean hasLength(Object[] args, int n) {
+        return args.length == n;
+    }
+
+    private static final MethodHandle HAS_LENGTH;
+    private static final MethodHandle PARSE;
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            HAS_LENGTH = lookup.findStatic(ArgParser.class, "hasLength",
+                    MethodType.methodType(boolean.class, OA, int.class));
+            PARSE = lookup.findVirtual(ArgParser.class, "parse",
+                    MethodType.methodType(OA, OA));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]", getClass().getSimpleName(), name);
+    }
+}
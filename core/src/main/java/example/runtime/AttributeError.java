@@ -0,0 +1,24 @@
+package example.runtime;
+
+/**
+ * The Python {@code AttributeError}, raised when an attribute is not
+ * found. This is stackless, as a failed look-up is often expected (as
+ * in {@code hasattr}).
+ */
+public class AttributeError extends PyException {
+
+    public AttributeError(String message) { super(message, null, true); }
+
+    /**
+     * Construct with a message formatted as by
+     * {@link String#format(String, Object...)}.
+     *
+     * @param fmt format of the message
+     * @param args arguments to the format
+     */
+    public AttributeError(String fmt, Object... args) {
+        this(String.format(fmt, args));
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -3,6 +3,8 @@
 package example.runtime;
 
 import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 import java.lang.annotation.Documented;
@@ -28,9 +30,43 @@ public interface Exposed {
      * a built-in module, this annotation results in a method definition
      * in the module specification, and a bound method in the dictionary
      * of each module instance created from it.
+     * <p>
+     * The method may be called with keyword arguments, matched to the
+     * names of the parameters in the Java source. A parameter may be
+     * given a default by {@link Default}.
      */
     @Documented
     @Retention(RUNTIME)
     @Target(METHOD)
     @interface PythonMethod {}
+
+    /**
+     * Specify the default value of a parameter of a method exposed by
+     * {@link PythonMethod}, as Python source text for the value. The
+     * forms accepted are a decimal integer and a string in single or
+     * double quotes.
+     */
+    @Documented
+    @Retention(RUNTIME)
+    @Target(PARAMETER)
+    @interface Default {
+        /** @return the default as Python source text */
+        String value();
+    }
+
+    /**
+     * Mark the defining class of a Python type whose dictionary may be
+     * changed after the type is registered. Without this, the type is
+     * immutable once registered (compare CPython
+     * {@code Py_TPFLAGS_IMMUTABLETYPE}), and an attempt to change its
+     * dictionary raises {@link TypeError}.
+     * <p>
+     * Every change to the dictionary of a mutable type invalidates the
+     * call sites and caches that depend on it, so a type should ask for
+     * this only if it needs it.
+     */
+    @Documented
+    @Retention(RUNTIME)
+    @Target(TYPE)
+    @interface Mutable {}
 }
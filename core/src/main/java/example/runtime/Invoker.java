@@ -0,0 +1,54 @@
+package example.runtime;
+
+/**
+ * An object that calls the exposed methods of one defining class
+ * directly, each identified by its index in the exposure of that class.
+ * The run-time generates one implementation (as a hidden class) for a
+ * defining class, when it registers the type or defines the module, if
+ * the system property {@code example.hiddenInvokers} is {@code true}.
+ * Because the implementation names each method in its bytecode, the
+ * JIT compiler can inline the method into a call through this interface
+ * where it cannot through a method handle held in a field.
+ * <p>
+ * This interface is public only so that the generated classes, which
+ * belong to the module of the defining class, may implement it. It is
+ * not for use by applications.
+ */
+public interface Invoker {
+
+    /**
+     * Call the method at index {@code i} with a target and one argument
+     * per parameter.
+     *
+     * @param i index of the method
+     * @param self target of the method
+     * @param args arguments after the target (exactly one per
+     *     parameter)
+     * @return result of the method ({@code null} if {@code void})
+     * @throws Throwable from the method
+     */
+    Object call(int i, Object self, Object[] args) throws Throwable;
+
+    /**
+     * Call the method at index {@code i}, which takes no arguments
+     * after the target.
+     *
+     * @param i index of the method
+     * @param self target of the method
+     * @return result of the method ({@code null} if {@code void})
+     * @throws Throwable from the method
+     */
+    Object call(int i, Object self) throws Throwable;
+
+    /**
+     * Call the method at index {@code i}, which takes one argument
+     * after the target.
+     *
+     * @param i index of the method
+     * @param self target of the method
+     * @param arg argument after the target
+     * @return result of the method ({@code null} if {@code void})
+     * @throws Throwable from the method
+     */
+    Object call(int i, Object self, Object arg) throws Throwable;
+}
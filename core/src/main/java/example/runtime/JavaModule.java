@@ -1,19 +1,40 @@
 package example.runtime;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles.Lookup;
 
+import example.internal.Linkage;
+
 /**
  * Base class of built-in and extension modules written in Java.
  */
 public abstract class JavaModule extends PyModule {
 
+    /**
+     * The shared definition of the functions of this module, which are
+     * bound into the dictionary only when first needed, or
+     * {@code null} when all of them have been. Guarded by {@code this}
+     * when not {@code null}.
+     */
+    private volatile ModuleDef<?> template;
+
+    /**
+     * Which functions of {@link #template} have been bound into the
+     * dictionary, indexed as its methods, or {@code null} if none has.
+     */
+    private boolean[] bound;
+
+    /** Number of functions of {@link #template} not yet bound. */
+    private int unbound;
+
     /**
      * Construct the base {@code JavaModule}, initialising it from the
      * module definition, which is normally created during static
      * initialisation of the concrete class defining the module.
      * <p>
-     * Methods defined in the module definition are added to the
-     * dictionary in this phase.
+     * Methods defined in the module definition become members of the
+     * module in this phase, although they may not be added to the
+     * dictionary until first needed.
      *
      * @param definition of the module
      */
@@ -22,6 +43,137 @@ public abstract class JavaModule extends PyModule {
         definition.addMembers(this);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Any functions of the module that are not yet in the dictionary
+     * are bound and added to it now.
+     */
+    @Override
+    public PyDict getDict() {
+        if (template != null) { bindAll(); }
+        return dict;
+    }
+
+    /**
+     * Look for a name in the dictionary of this module, binding the
+     * function of that name from the module definition if it has not
+     * been added to the dictionary yet.
+     *
+     * @param name to look up
+     * @return dictionary entry or {@code null}
+     */
+    public Object lookup(String name) {
+        /*
+         * Binding writes the dictionary under the lock and clears the
+         * template last, so only once we read it as null may we read the
+         * dictionary without the lock.
+         */
+        if (template == null) { return dict.get(name); }
+        return bindOne(name);
+    }
+
+    /**
+     * Call the function of the given name in this module. Where the
+     * member is still the function from the module definition, we call
+     * the method directly with this module as the receiver, without
+     * binding it or looking in the dictionary. Otherwise we call
+     * whatever is in the dictionary.
+     *
+     * @param name of the function
+     * @param args arguments of the call
+     * @return result of the call
+     */
+    public Object invoke(String name, Object... args) {
+        try {
+            /*
+             * While there is a template, the dictionary has not been
+             * handed out by getDict(), so it can only hold functions
+             * bound from the template: calling the method is the same.
+             */
+            ModuleDef<?> t = template;
+            int i = t == null ? -1 : t.indexOf(name);
+            if (i >= 0) {
+                ModuleDef.MethodDef md = t.getMethods()[i];
+                if (md.invoker != null && args.length == md.parser.size()) {
+                    return md.invoker.call(md.index, this, args);
+                }
+                return md.handle.invokeExact((Object)this, args);
+            }
+            Object f = lookup(name);
+            if (f == null) {
+                throw new AttributeError(
+                        "module '%s' has no attribute '%s'", this.name,
+                        name);
+            }
+            return CALL.invokeExact(f, (Object)args);
+        } catch (Throwable e) {
+            throw PyException.wrapped(e);
+        }
+    }
+
+    /** Call site for {@code __call__} on a dictionary entry. */
+    private static final MethodHandle CALL =
+            Linkage.dynamicInvoker("__call__", MT.BINARY);
+
+    /**
+     * Adopt the given definition as the template from which to bind the
+     * functions of this module when first needed.
+     *
+     * @param def definition of this module
+     */
+    synchronized void setTemplate(ModuleDef<?> def) {
+        template = def;
+        bound = null;
+        unbound = def.getMethods().length;
+        if (unbound == 0) { template = null; }
+    }
+
+    /**
+     * Bind the named function from the template into the dictionary,
+     * if it has not been bound already, and return the dictionary
+     * entry. This is also how {@link #lookup(String)} reads the
+     * dictionary while binding may still be in progress.
+     */
+    private synchronized Object bindOne(String name) {
+        Object v = dict.get(name);
+        ModuleDef<?> t = template;
+        if (v == null && t != null) {
+            int i = t.indexOf(name);
+            if (i >= 0 && (bound == null || !bound[i])) {
+                v = t.bind(this, i);
+                dict.put(name, v);
+                markBound(t, i);
+            }
+        }
+        return v;
+    }
+
+    /** Bind all functions not yet bound from the template. */
+    private synchronized void bindAll() {
+        ModuleDef<?> t = template;
+        if (t != null) {
+            ModuleDef.MethodDef[] methods = t.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                if (bound == null || !bound[i]) {
+                    dict.put(methods[i].name, t.bind(this, i));
+                    markBound(t, i);
+                }
+            }
+        }
+    }
+
+    /** Record that the function at index {@code i} has been bound. */
+    private void markBound(ModuleDef<?> t, int i) {
+        if (bound == null) { bound = new boolean[t.getMethods().length]; }
+        bound[i] = true;
+        if (--unbound == 0) {
+            // Everything is in the dictionary now.
+            template = null;
+            bound = null;
+        }
+    }
+
     /**
      * Create a module definition by scanning a defining class for
      * exposed methods.
@@ -72,9 +224,10 @@ public abstract class JavaModule extends PyModule {
         String getName();
 
         /**
-         * Add members from this definition to the dictionary of a
-         * module instance. Although a definition is created once, it
-         * may populate multiple instances.
+         * Add members from this definition to a module instance.
+         * Although a definition is created once, it may populate
+         * multiple instances. An implementation may defer adding
+         * members to the dictionary until they are needed.
          *
          * @param module to populate
          */
@@ -0,0 +1,30 @@
+package example.runtime;
+
+/**
+ * The Python {@code KeyError}, raised when a key is not found in a
+ * mapping. This is stackless, as a failed look-up is often expected.
+ */
+public class KeyError extends PyException {
+
+    /** The key that was not found. */
+    private final Object key;
+
+    /**
+     * Construct for the given key.
+     *
+     * @param key that was not found
+     */
+    public KeyError(Object key) {
+        super(String.valueOf(key), null, true);
+        this.key = key;
+    }
+
+    /**
+     * Return the key that was not found.
+     *
+     * @return the key
+     */
+    public Object getKey() { return key; }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -2,22 +2,23 @@
 // Licensed to PSF under a contributor agreement.
 package example.runtime;
 
-import static example.internal.ClassShorthand.OA;
-
 import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
 import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
-import example.runtime.Exposed.PythonMethod;
+import example.internal.Exposer;
+import example.internal.Exposure;
 
 /**
  * A {@code ModuleDef} is a definition from which instances of a module
- * may be populated.
+ * may be populated. Once created, it is immutable, and it is shared by
+ * all instances of the module as a template for their members. An
+ * instance binds a function from the template only when the function is
+ * first needed in its dictionary.
  */
 public class ModuleDef<JM extends JavaModule>
         implements JavaModule.Definition {
@@ -36,10 +37,14 @@ public class ModuleDef<JM extends JavaModule>
      */
     private final MethodDef[] methods;
 
+    /** Index in {@link #methods} of each member, by name. */
+    private final Map<String, Integer> index;
+
     /**
-     * Create a definition for the module, largely by introspection on
-     * the class and by forming {@code MethodHandle}s on discovered
-     * attributes.
+     * Create a definition for the module, from the table of exposed
+     * methods generated for the class (or by introspection on the class
+     * if there is none) and by forming {@code MethodHandle}s on
+     * discovered attributes.
      *
      * @param moduleName of the module (e.g. "sys" or "math")
      * @param definingClass of the module
@@ -52,55 +57,20 @@ public class ModuleDef<JM extends JavaModule>
 
         // Record the exposed methods as MethodDefs.
         List<MethodDef> methods = new LinkedList<>();
-        for (Method m : definingClass.getDeclaredMethods()) {
-            PythonMethod pm =
-                    m.getDeclaredAnnotation(PythonMethod.class);
-            if (pm != null) {
-                addMethod(methods, moduleName, m, lookup);
-            }
+        Exposure exposure = Exposure.of(definingClass, lookup);
+        for (int i = 0; i < exposure.size(); i++) {
+            Exposer.Adapted m = Exposer.expose(moduleName, exposure, i);
+            methods.add(new MethodDef(m.name, m.method, m.fixed, m.parser,
+                    m.invoker, m.index));
         }
 
         this.methods = methods.toArray(new MethodDef[methods.size()]);
-    }
 
-    /**
-     * Add a {@link MethodDef} for the given method {@code m} to the
-     * working list.
-     */
-    private static void addMethod(List<MethodDef> methods,
-            String moduleName, Method m, Lookup lookup) {
-        String name = m.getName();
-        // Must be an instance method of the module type M
-        assert Modifier.isStatic(m.getModifiers()) == false;
-
-        try {
-            // Signature of handle is to be (O,O[])O
-            /*
-             * In real life we would need run-time checks and
-             * conversion, but this is just a toy.
-             */
-            MethodHandle mh = lookup.unreflect(m);
-            MethodType mt = mh.type();
-            int n = mt.parameterCount();
-            assert n > 0;
-            if (n == 1) {
-                // Signature is currently (M)T
-                // Add an ignored array argument (no args at run-time).
-                mh = MethodHandles.dropArguments(mh, 1, OA);
-            } else {
-                // Signature is currently (M,A,B,...)T
-                // We shall receive an array we spread to the args.
-                mh = mh.asSpreader(OA, n - 1);
-            }
-            mh = mh.asType(MT.METHOD);
-            MethodDef md = new MethodDef(name, mh);
-            methods.add(md);
-        } catch (ReflectiveOperationException e) {
-            String msg = String.format(
-                    "Cannot expose method %s.%s: due to %s", moduleName,
-                    name, e);
-            throw new PyException(msg, e);
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < this.methods.length; i++) {
+            index.put(this.methods[i].name, i);
         }
+        this.index = Collections.unmodifiableMap(index);
     }
 
     /**
@@ -111,18 +81,44 @@ public class ModuleDef<JM extends JavaModule>
      */
     MethodDef[] getMethods() { return methods; }
 
+    /**
+     * Return the index in {@link #getMethods()} of the method with the
+     * given name, or -1 if there is none.
+     *
+     * @param name of the method
+     * @return index of the method or -1
+     */
+    int indexOf(String name) {
+        Integer i = index.get(name);
+        return i == null ? -1 : i;
+    }
+
     @Override
     public String getName() { return name; }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This definition does not bind any functions now. It becomes the
+     * template from which the module binds each function into its
+     * dictionary, only when it is first needed there.
+     */
     @Override
     public void addMembers(JavaModule module) {
-        PyDict d = module.getDict();
-        for (MethodDef md : methods) {
-            // Create function by binding to the module
-            PyJavaFunction func = PyJavaFunction.forModule(md.name,
-                    md.handle, module);
-            d.put(md.name, func);
-        }
+        module.setTemplate(this);
+    }
+
+    /**
+     * Create the function that is the member at index {@code i}, by
+     * binding the method to the module.
+     *
+     * @param module to which the function is bound
+     * @param i index of the method in {@link #getMethods()}
+     * @return bound function
+     */
+    PyJavaFunction bind(JavaModule module, int i) {
+        MethodDef md = methods[i];
+        return PyJavaFunction.forModule(md, module);
     }
 
     /**
@@ -134,11 +130,29 @@ public class ModuleDef<JM extends JavaModule>
     static class MethodDef {
 
         final String name;
+        /** Handle of type {@link MT#METHOD}. */
         final MethodHandle handle;
-
-        MethodDef(String name, MethodHandle meth) {
+        /**
+         * Handle of type {@link MT#UNARY} or {@link MT#BINARY} if the
+         * method takes zero or one argument after the module, else
+         * {@code null}.
+         */
+        final MethodHandle fixed;
+        /** Parser of the arguments after the module. */
+        final ArgParser parser;
+        /** Generated invoker of the module methods, or {@code null}. */
+        final Invoker invoker;
+        /** Index of this method in {@link #invoker}. */
+        final int index;
+
+        MethodDef(String name, MethodHandle meth, MethodHandle fixed,
+                ArgParser parser, Invoker invoker, int index) {
             this.name = name;
             this.handle = meth;
+            this.fixed = fixed;
+            this.parser = parser;
+            this.invoker = invoker;
+            this.index = index;
         }
 
         @Override
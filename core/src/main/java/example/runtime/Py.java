@@ -12,5 +12,13 @@ public class Py {
      */
     public static PyDict dict() { return new PyDict(); }
 
+    /**
+     * Return an empty Python {@code dict} specialised for use as a
+     * namespace, where the keys are (almost always) {@code String}s.
+     *
+     * @return {@code dict()} specialised to {@code String} keys
+     */
+    public static PyDict namespace() { return new PyDict(true); }
+
 
 }
@@ -1,39 +1,181 @@
 package example.runtime;
 
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
-import java.util.StringJoiner;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
+/**
+ * The Python {@code dict} object. It is implemented, after CPython 3.6
+ * and later, as a compact hash table that preserves insertion order.
+ * The entries are held in dense arrays of keys, values and hashes,
+ * appended in order of insertion, and a separate (sparse) index maps a
+ * hash to a position in those arrays.
+ * <p>
+ * A small dictionary has no index at all, and is searched by a linear
+ * scan of the hashes. Iteration of keys and values runs along the dense
+ * arrays, without allocation per entry. The views of keys, values and
+ * entries split by range of position for parallel streams, and the
+ * bulk operations {@link #forEach(BiConsumer)},
+ * {@link #replaceAll(BiFunction)}, {@link #keyArray()} and
+ * {@link #valueArray()} work directly on the arrays.
+ * <p>
+ * A dictionary created by {@link #PyDict(boolean) PyDict(true)} (or
+ * {@link Py#namespace()}) is specialised for keys that are all
+ * {@code String}s, as is normal in a module, type or instance
+ * dictionary. Look-up compares keys for identity first, which usually
+ * succeeds because identifiers are interned. If a key that is not a
+ * {@code String} is ever inserted, the dictionary switches permanently
+ * to the general representation.
+ * <p>
+ * Every change to the dictionary increments a {@link #getVersion()
+ * version} number, which a client may use to validate what it has
+ * cached from it.
+ * <p>
+ * Keys may not be {@code null}.
+ */
 public class PyDict extends AbstractMap<Object, Object>
-        implements WithType {
+        implements WithType, WithId {
 
-    /** The dictionary as a hash map preserving insertion order. */
-    private final LinkedHashMap<Object, Object> map =
-            new LinkedHashMap<Object, Object>();
+    /** Capacity at and below which we do not build an index. */
+    private static final int SMALL = 8;
+
+    /** Capacity allocated on the first insertion. */
+    private static final int MIN_CAPACITY = 4;
+
+    /** The key of an entry that has been removed. */
+    private static final Object DELETED = new Object();
+
+    private static final Object[] NO_OBJECTS = new Object[0];
+    private static final int[] NO_INTS = new int[0];
+
+    /** Keys in insertion order, or {@link #DELETED}. */
+    private Object[] keys = NO_OBJECTS;
+
+    /** Values corresponding to {@link #keys}. */
+    private Object[] values = NO_OBJECTS;
+
+    /** Hashes corresponding to {@link #keys}. */
+    private int[] hashes = NO_INTS;
+
+    /**
+     * Open-addressed index from hash to 1 + the position of an entry in
+     * {@link #keys}, or 0 if the slot is empty. {@code null} while the
+     * capacity is no more than {@link #SMALL}.
+     */
+    private int[] index;
+
+    /** Number of positions used in the entry arrays (some deleted). */
+    private int used;
+
+    /** Number of entries (not deleted). */
+    private int size;
+
+    /** Count of structural changes, to detect concurrent modification. */
+    private int modCount;
+
+    /** Whether all keys are {@code String} (a namespace). */
+    private boolean stringKeys;
+
+    /** Incremented on every change. */
+    private long version;
+
+    private static final VarHandle ID =
+            WithId.idField(MethodHandles.lookup());
+
+    /** Python {@code id()} of this object, or zero until asked for. */
+    private volatile long id;
+
+    /**
+     * The views, made when first asked for. As in {@code AbstractMap},
+     * the views hold no state, so a race to make one is harmless.
+     */
+    private Set<Entry<Object, Object>> entrySetView;
+    private Set<Object> keySetView;
+    private Collection<Object> valuesView;
+
+    /** Create an empty {@code dict} for general keys. */
+    public PyDict() { this(false); }
+
+    /**
+     * Create an empty {@code dict}, optionally specialised to keys that
+     * are {@code String}.
+     *
+     * @param stringKeys if specialised to {@code String} keys
+     */
+    public PyDict(boolean stringKeys) { this.stringKeys = stringKeys; }
+
+    /**
+     * Create a {@code dict} with the same entries as another, in the
+     * same order, with the same specialisation, and with a version
+     * number following that of {@code other}.
+     *
+     * @param other to copy
+     */
+    public PyDict(PyDict other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.hashes = other.hashes.clone();
+        this.index = other.index == null ? null : other.index.clone();
+        this.used = other.used;
+        this.size = other.size;
+        this.stringKeys = other.stringKeys;
+        this.version = other.version + 1;
+    }
 
     // slot functions -------------------------------------------------
 
-    @SuppressWarnings("unused")
-    private Object __str__() throws Throwable { return mapRepr(this); }
+    @Exposed.PythonMethod
+    private Object __str__() {
+        StringBuilder sb = new StringBuilder();
+        __str_into__(new ReprBuilder(sb));
+        return sb.toString();
+    }
 
-    private static String mapRepr(Map<? extends Object, ?> map)
-            throws Throwable {
-        StringJoiner sj = new StringJoiner(", ", "{", "}");
-        for (Map.Entry<? extends Object, ?> e : map.entrySet()) {
-            String key = e.getKey().toString();
-            String value = e.getValue().toString();
-            sj.add(key + ": " + value);
+    @Exposed.PythonMethod
+    private void __str_into__(ReprBuilder out) {
+        if (!out.enter(this)) {
+            // This dict contains itself.
+            out.append("{...}");
+            return;
+        }
+        try {
+            out.append("{");
+            String sep = "";
+            for (int i = 0; i < used && !out.isFull(); i++) {
+                Object k = keys[i];
+                if (k != DELETED) {
+                    out.append(sep).appendStr(k).append(": ")
+                            .appendStr(values[i]);
+                    sep = ", ";
+                }
+            }
+            out.append("}");
+        } finally {
+            out.exit(this);
         }
-        return sj.toString();
     }
 
     // plumbing -------------------------------------------------------
 
+    @Override
+    public final long id() {
+        long i = id;
+        return i != 0L ? i : PyUtil.assignId(ID, this);
+    }
+
     @Override
     public PyType getType() { return TYPE; }
 
@@ -42,20 +184,64 @@ public class PyDict extends AbstractMap<Object, Object>
 
     @Override
     public Set<Entry<Object, Object>> entrySet() {
-        return new EntrySetImpl();
+        Set<Entry<Object, Object>> es = entrySetView;
+        return es != null ? es : (entrySetView = new EntrySetImpl());
     }
 
+    @Override
+    public Set<Object> keySet() {
+        Set<Object> ks = keySetView;
+        return ks != null ? ks : (keySetView = new KeySetImpl());
+    }
+
+    @Override
+    public Collection<Object> values() {
+        Collection<Object> vs = valuesView;
+        return vs != null ? vs : (valuesView = new ValuesImpl());
+    }
+
+    @Override
+    public int size() { return size; }
+
     /**
-     * Override {@code Map.get} to get from inner map.
+     * Return a number that changes whenever the dictionary changes, by
+     * insertion, removal or replacement of a value. (It is incremented
+     * on every change, so values may be compared but are not unique
+     * across dictionaries.)
+     *
+     * @return the version number
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * Whether the dictionary is specialised to {@code String} keys.
+     * This is {@code true} only if it was created so, and no other kind
+     * of key has been inserted.
+     *
+     * @return whether specialised to {@code String} keys
+     */
+    public boolean hasStringKeys() { return stringKeys; }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && find(key, hash(key)) >= 0;
+    }
+
+    /**
+     * Override {@code Map.get} to get from the table.
      *
      * @param key whose associated value is to be returned
      * @return value at {@code key} or {@code null} if not found
      */
     @Override
-    public Object get(Object key) { return map.get(key); }
+    public Object get(Object key) {
+        if (key == null) { return null; }
+        int i = find(key, hash(key));
+        return i < 0 ? null : values[i];
+    }
 
     /**
-     * Override {@code Map.put} to save in inner map.
+     * Override {@code Map.put} to save in the table.
      *
      * @param key with which the specified value is to be associated
      * @param value to be associated
@@ -63,17 +249,514 @@ public class PyDict extends AbstractMap<Object, Object>
      */
     @Override
     public Object put(Object key, Object value) {
-        return map.put(key, value);
+        Objects.requireNonNull(key, "dict key");
+        if (stringKeys && !(key instanceof String)) {
+            // Henceforth, we are a general dict.
+            stringKeys = false;
+        }
+        int h = hash(key);
+        int i = find(key, h);
+        version += 1;
+        if (i >= 0) {
+            // Existing entry: replace the value in place.
+            Object old = values[i];
+            values[i] = value;
+            return old;
+        }
+        if (used == keys.length) { resize(); }
+        i = used++;
+        keys[i] = key;
+        values[i] = value;
+        hashes[i] = h;
+        if (index != null) { index[freeSlot(h)] = i + 1; }
+        size += 1;
+        modCount += 1;
+        return null;
     }
 
     /**
-     * Override {@code Map.remove} to delete from inner map.
+     * Override {@code Map.remove} to delete from the table.
      *
      * @param key for which the entry is to be removed
      * @return previous value associated
      */
     @Override
-    public Object remove(Object key) { return map.remove(key); }
+    public Object remove(Object key) {
+        if (key == null) { return null; }
+        int i = find(key, hash(key));
+        return i < 0 ? null : removeAt(i);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The action receives the key and value from the entry arrays,
+     * without an entry object being made for them.
+     */
+    @Override
+    public void forEach(BiConsumer<? super Object, ? super Object> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        Object[] ks = keys, vs = values;
+        for (int i = 0, n = used; i < n; i++) {
+            Object k = ks[i];
+            if (k != DELETED) { action.accept(k, vs[i]); }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The values are replaced in place in the entry arrays, and the
+     * version number changes once for the whole operation.
+     */
+    @Override
+    public void replaceAll(
+            BiFunction<? super Object, ? super Object, ?> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        Object[] ks = keys, vs = values;
+        for (int i = 0, n = used; i < n; i++) {
+            Object k = ks[i];
+            if (k != DELETED) { vs[i] = function.apply(k, vs[i]); }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (size > 0) { version += 1; }
+    }
+
+    /**
+     * Return a new array of the keys, in order.
+     *
+     * @return the keys
+     */
+    public Object[] keyArray() { return snapshot(keys); }
+
+    /**
+     * Return a new array of the values, in the order of their keys.
+     *
+     * @return the values
+     */
+    public Object[] valueArray() { return snapshot(values); }
+
+    /** Copy the live elements of an entry array. */
+    private Object[] snapshot(Object[] a) {
+        if (size == used) {
+            // No deleted entries: one block copy.
+            return Arrays.copyOf(a, used);
+        }
+        Object[] r = new Object[size];
+        Object[] ks = keys;
+        for (int i = 0, j = 0; j < r.length; i++) {
+            if (ks[i] != DELETED) { r[j++] = a[i]; }
+        }
+        return r;
+    }
+
+    @Override
+    public void clear() {
+        keys = values = NO_OBJECTS;
+        hashes = NO_INTS;
+        index = null;
+        used = size = 0;
+        modCount += 1;
+        version += 1;
+    }
+
+    // implementation -------------------------------------------------
+
+    /** The hash of a key, spread so that high bits affect the index. */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Find the position of {@code key} in the entry arrays.
+     *
+     * @param key to find (not {@code null})
+     * @param h its {@link #hash(Object)}
+     * @return position in {@link #keys} or -1 if not present
+     */
+    private int find(Object key, int h) {
+        if (stringKeys) {
+            // Only a String can be equal to a String key.
+            return key instanceof String s ? findString(s, h) : -1;
+        } else if (index == null) {
+            // Small table: linear scan of the hashes.
+            for (int i = 0; i < used; i++) {
+                if (hashes[i] == h && matches(keys[i], key)) {
+                    return i;
+                }
+            }
+        } else {
+            // Probe as in CPython. (Deleted entries keep their slot.)
+            int mask = index.length - 1, j = h & mask;
+            for (int perturb = h, e; (e = index[j]) != 0;) {
+                int i = e - 1;
+                if (hashes[i] == h && matches(keys[i], key)) {
+                    return i;
+                }
+                perturb >>>= 5;
+                j = (5 * j + 1 + perturb) & mask;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the position of {@code key} in the entry arrays, when all
+     * keys are {@code String}.
+     *
+     * @param key to find
+     * @param h its {@link #hash(Object)}
+     * @return position in {@link #keys} or -1 if not present
+     */
+    private int findString(String key, int h) {
+        if (index == null) {
+            // Small table: linear scan, trying identity first.
+            for (int i = 0; i < used; i++) {
+                Object k = keys[i];
+                if (k == key || hashes[i] == h && key.equals(k)) {
+                    return i;
+                }
+            }
+        } else {
+            int mask = index.length - 1, j = h & mask;
+            for (int perturb = h, e; (e = index[j]) != 0;) {
+                int i = e - 1;
+                Object k = keys[i];
+                if (k == key || hashes[i] == h && key.equals(k)) {
+                    return i;
+                }
+                perturb >>>= 5;
+                j = (5 * j + 1 + perturb) & mask;
+            }
+        }
+        return -1;
+    }
+
+    /** Whether the key {@code k} in the table matches {@code key}. */
+    private static boolean matches(Object k, Object key) {
+        // DELETED matches nothing (since equals is identity).
+        return k == key || k.equals(key);
+    }
+
+    /**
+     * Find an empty slot in the index for an entry with hash {@code h}.
+     *
+     * @param h hash of the entry
+     * @return position in the {@link #index}
+     */
+    private int freeSlot(int h) {
+        int mask = index.length - 1, j = h & mask;
+        for (int perturb = h; index[j] != 0;) {
+            perturb >>>= 5;
+            j = (5 * j + 1 + perturb) & mask;
+        }
+        return j;
+    }
+
+    /**
+     * Remove the entry at position {@code i} in the entry arrays. The
+     * position is marked deleted, and is recovered when the table is
+     * next resized.
+     *
+     * @param i position of the entry
+     * @return previous value associated
+     */
+    private Object removeAt(int i) {
+        Object old = values[i];
+        keys[i] = DELETED;
+        values[i] = null;
+        size -= 1;
+        modCount += 1;
+        version += 1;
+        return old;
+    }
+
+    /**
+     * Make room for at least one more entry at the end of the arrays,
+     * either by discarding deleted entries or by growing the table.
+     */
+    private void resize() {
+        int capacity = keys.length;
+        if (capacity == 0) {
+            capacity = MIN_CAPACITY;
+        } else if (2 * size >= capacity) {
+            // Not enough to gain by compaction alone.
+            capacity *= 2;
+        }
+        rebuild(capacity);
+    }
+
+    /**
+     * Copy the entries into arrays of a new capacity, discarding the
+     * deleted ones, and build the index if the capacity requires it.
+     *
+     * @param capacity of the new arrays
+     */
+    private void rebuild(int capacity) {
+        Object[] newKeys = new Object[capacity];
+        Object[] newValues = new Object[capacity];
+        int[] newHashes = new int[capacity];
+        int n = 0;
+        for (int i = 0; i < used; i++) {
+            Object k = keys[i];
+            if (k != DELETED) {
+                newKeys[n] = k;
+                newValues[n] = values[i];
+                newHashes[n++] = hashes[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        hashes = newHashes;
+        used = n;
+        if (capacity > SMALL) {
+            // Twice the capacity keeps the load factor below 1/2.
+            index = new int[2 * capacity];
+            for (int i = 0; i < n; i++) {
+                index[freeSlot(hashes[i])] = i + 1;
+            }
+        } else {
+            index = null;
+        }
+    }
+
+    /**
+     * Base of iterators over the entry arrays. It yields positions in
+     * the arrays, skipping deleted entries.
+     */
+    private abstract class BaseIterator {
+
+        /** Position of the next entry (if less than {@link #used}). */
+        private int next;
+
+        /** Position of the last entry returned or -1. */
+        private int last = -1;
+
+        /** Expected value of {@link PyDict#modCount}. */
+        private int expectedModCount = modCount;
+
+        BaseIterator() { next = skipDeleted(0); }
+
+        private int skipDeleted(int i) {
+            while (i < used && keys[i] == DELETED) { i++; }
+            return i;
+        }
+
+        public boolean hasNext() { return next < used; }
+
+        /**
+         * Advance to the next entry.
+         *
+         * @return position of that entry in the arrays
+         */
+        int nextIndex() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            } else if (next >= used) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = skipDeleted(next + 1);
+            return last;
+        }
+
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            } else if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Base of spliterators over the entry arrays. A spliterator covers
+     * a range of positions in the arrays, and splits by halving the
+     * range, so that the halves are balanced without counting entries.
+     * When the dictionary has no deleted entries, the size of each range
+     * is exact, and the spliterator (and its splits) report
+     * {@code SIZED} and {@code SUBSIZED}. Otherwise the size is an
+     * upper bound.
+     *
+     * @param <T> type of element
+     */
+    private abstract class BaseSpliterator<T> implements Spliterator<T> {
+
+        /** The entry arrays when this was created (or split from). */
+        final Object[] ks, vs;
+
+        /** Next position to visit, and the end of the range. */
+        private int origin;
+        private final int fence;
+
+        /** Whether {@code fence - origin} is the exact size. */
+        private final boolean exact;
+
+        /** Expected value of {@link PyDict#modCount}. */
+        private final int expectedModCount;
+
+        BaseSpliterator() {
+            this(keys, values, 0, used, size == used, modCount);
+        }
+
+        BaseSpliterator(Object[] ks, Object[] vs, int origin, int fence,
+                boolean exact, int expectedModCount) {
+            this.ks = ks;
+            this.vs = vs;
+            this.origin = origin;
+            this.fence = fence;
+            this.exact = exact;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * The element at position {@code i}.
+         *
+         * @param i position in the arrays
+         * @return the element
+         */
+        abstract T element(int i);
+
+        /**
+         * A spliterator like this over the given range.
+         *
+         * @param lo first position
+         * @param hi end of the range
+         * @return the spliterator
+         */
+        abstract BaseSpliterator<T> split(int lo, int hi);
+
+        /** Characteristics additional to those of the range. */
+        abstract int elementCharacteristics();
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (origin < fence) {
+                int i = origin++;
+                if (ks[i] != DELETED) {
+                    action.accept(element(i));
+                    checkModCount();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            for (int i = origin; i < fence; i++) {
+                if (ks[i] != DELETED) { action.accept(element(i)); }
+            }
+            origin = fence;
+            checkModCount();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int lo = origin, mid = (lo + fence) >>> 1;
+            if (lo >= mid) { return null; }
+            origin = mid;
+            return split(lo, mid);
+        }
+
+        @Override
+        public long estimateSize() { return fence - origin; }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | (exact ? SIZED | SUBSIZED : 0)
+                    | elementCharacteristics();
+        }
+
+        /** @return expected value of {@link PyDict#modCount} */
+        final int expected() { return expectedModCount; }
+
+        /** @return whether the range sizes are exact */
+        final boolean exact() { return exact; }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /** Spliterator over the keys. */
+    private class KeySpliterator extends BaseSpliterator<Object> {
+
+        KeySpliterator() {}
+
+        KeySpliterator(KeySpliterator from, int lo, int hi) {
+            super(from.ks, from.vs, lo, hi, from.exact(), from.expected());
+        }
+
+        @Override
+        Object element(int i) { return ks[i]; }
+
+        @Override
+        KeySpliterator split(int lo, int hi) {
+            return new KeySpliterator(this, lo, hi);
+        }
+
+        @Override
+        int elementCharacteristics() { return DISTINCT | NONNULL; }
+    }
+
+    /** Spliterator over the values. */
+    private class ValueSpliterator extends BaseSpliterator<Object> {
+
+        ValueSpliterator() {}
+
+        ValueSpliterator(ValueSpliterator from, int lo, int hi) {
+            super(from.ks, from.vs, lo, hi, from.exact(), from.expected());
+        }
+
+        @Override
+        Object element(int i) { return vs[i]; }
+
+        @Override
+        ValueSpliterator split(int lo, int hi) {
+            return new ValueSpliterator(this, lo, hi);
+        }
+
+        @Override
+        int elementCharacteristics() { return 0; }
+    }
+
+    /** Spliterator over the entries. */
+    private class EntrySpliterator
+            extends BaseSpliterator<Entry<Object, Object>> {
+
+        EntrySpliterator() {}
+
+        EntrySpliterator(EntrySpliterator from, int lo, int hi) {
+            super(from.ks, from.vs, lo, hi, from.exact(), from.expected());
+        }
+
+        @Override
+        Entry<Object, Object> element(int i) { return new EntryImpl(i); }
+
+        @Override
+        EntrySpliterator split(int lo, int hi) {
+            return new EntrySpliterator(this, lo, hi);
+        }
+
+        @Override
+        int elementCharacteristics() { return DISTINCT | NONNULL; }
+    }
 
     /**
      * An instance of this class is returned by
@@ -89,32 +772,126 @@ public class PyDict extends AbstractMap<Object, Object>
         }
 
         @Override
-        public int size() { return map.size(); }
+        public Spliterator<Entry<Object, Object>> spliterator() {
+            return new EntrySpliterator();
+        }
+
+        @Override
+        public int size() { return size; }
     }
 
     /**
      * An instance of this class is returned by
-     * {@link EntrySetImpl#iterator()}. It is backed by an iterator on
-     * the underlying {@link #map}.
+     * {@link EntrySetImpl#iterator()}. The entries it returns are views
+     * of a position in the entry arrays of the {@code PyDict}, and do
+     * not copy the key and value.
      */
-    private class EntrySetIteratorImpl
+    private class EntrySetIteratorImpl extends BaseIterator
             implements Iterator<Entry<Object, Object>> {
 
-        /** Backing iterator on the "real" implementation. */
-        private final Iterator<Entry<Object, Object>> mapIterator =
-                map.entrySet().iterator();
+        @Override
+        public Entry<Object, Object> next() {
+            return new EntryImpl(nextIndex());
+        }
+    }
+
+    /**
+     * An entry of the {@code PyDict}, valid until the table is next
+     * resized.
+     */
+    private class EntryImpl implements Entry<Object, Object> {
+
+        private final int i;
+
+        EntryImpl(int i) { this.i = i; }
 
         @Override
-        public boolean hasNext() { return mapIterator.hasNext(); }
+        public Object getKey() { return keys[i]; }
 
         @Override
-        public Entry<Object, Object> next() {
-            Entry<Object, Object> e = mapIterator.next();
-            return new SimpleEntry<Object, Object>(e.getKey(),
-                    e.getValue());
+        public Object getValue() { return values[i]; }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[i];
+            values[i] = value;
+            version += 1;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry<?, ?> e
+                    && Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey())
+                    ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() { return getKey() + "=" + getValue(); }
+    }
+
+    /** The view returned by {@link PyDict#keySet()}. */
+    private class KeySetImpl extends AbstractSet<Object> {
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public Spliterator<Object> spliterator() {
+            return new KeySpliterator();
         }
 
         @Override
-        public void remove() { mapIterator.remove(); }
+        public Object[] toArray() { return keyArray(); }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public boolean contains(Object o) { return containsKey(o); }
+    }
+
+    /** Iterator over the keys, without allocation per entry. */
+    private class KeyIterator extends BaseIterator
+            implements Iterator<Object> {
+
+        @Override
+        public Object next() { return keys[nextIndex()]; }
+    }
+
+    /** The view returned by {@link PyDict#values()}. */
+    private class ValuesImpl extends AbstractCollection<Object> {
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public Spliterator<Object> spliterator() {
+            return new ValueSpliterator();
+        }
+
+        @Override
+        public Object[] toArray() { return valueArray(); }
+
+        @Override
+        public int size() { return size; }
+    }
+
+    /** Iterator over the values, without allocation per entry. */
+    private class ValueIterator extends BaseIterator
+            implements Iterator<Object> {
+
+        @Override
+        public Object next() { return values[nextIndex()]; }
     }
 }
@@ -1,18 +1,68 @@
 package example.runtime;
 
+import example.internal.RuntimeEvents;
+
+/**
+ * A Python exception, as thrown through Java. Subclasses stand for
+ * particular Python exception types.
+ * <p>
+ * Some exceptions are raised so often in the normal course of Python
+ * (for control flow, or in a probe that expects to fail) that the cost
+ * of capturing a Java stack trace would dominate. Those classes are
+ * constructed <i>stackless</i>: they do not fill in the stack trace and
+ * do not record suppressed exceptions. A stackless instance without a
+ * cause is therefore immutable, and may be created once and thrown
+ * many times. The system property {@code example.fullStackTraces} may
+ * be set {@code true} to capture stack traces in all exceptions, when
+ * debugging.
+ */
 public class PyException extends RuntimeException {
 
+    /** Capture stack traces even in stackless exceptions. */
+    private static final boolean FULL_STACK_TRACES =
+            Boolean.getBoolean("example.fullStackTraces");
+
     public PyException(String message, Throwable cause) {
         super(message, cause);
     }
 
     public PyException(String message) { super(message); }
 
+    /**
+     * Construct an exception that is stackless if requested (and full
+     * stack traces are not enabled).
+     *
+     * @param message detail message
+     * @param cause of this exception or {@code null}
+     * @param stackless if the stack trace should not be captured
+     */
+    protected PyException(String message, Throwable cause,
+            boolean stackless) {
+        super(message, cause, !stackless,
+                !stackless || FULL_STACK_TRACES);
+    }
+
+    /**
+     * Return {@code t} as a {@code PyException}: itself if it is one,
+     * or else a {@link SystemError} having {@code t} as its cause. The
+     * wrapper is stackless, since the cause holds the stack trace that
+     * matters.
+     *
+     * @param t to return as a {@code PyException}
+     * @return {@code t} or a wrapper
+     */
     public static PyException wrapped(Throwable t) {
         if (t instanceof PyException pe) {
             return pe;
         } else {
-            return new PyException("Internal error", t);
+            RuntimeEvents.ExceptionWrap event =
+                    new RuntimeEvents.ExceptionWrap();
+            if (event.shouldCommit()) {
+                event.exceptionClass = t.getClass();
+                event.message = t.getMessage();
+                event.commit();
+            }
+            return new SystemError("Internal error", t);
         }
     }
 
@@ -1,20 +1,150 @@
 package example.runtime;
 
 import java.lang.invoke.MethodHandles;
+import java.math.BigInteger;
 
+/**
+ * The Python {@code int} type. Instances are represented by
+ * {@code Integer}, {@code Long} or {@code BigInteger}. Arithmetic is
+ * carried out in the narrowest of {@code int}, {@code long} and
+ * {@code BigInteger} that represents the result exactly, and results
+ * are always returned in the narrowest representation. Values in the
+ * range {@value #SMALL_MIN} to {@value #SMALL_MAX} are taken from a
+ * cache.
+ */
 public class PyInt {
 
+    private PyInt() {}  // no instances
+
+    /** Least value held in the cache of small {@code int}s. */
+    static final int SMALL_MIN = -5;
+    /** Greatest value held in the cache of small {@code int}s. */
+    static final int SMALL_MAX = 256;
+
+    /** Cache of the small {@code int}s, like CPython's. */
+    private static final Integer[] SMALL =
+            new Integer[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        for (int i = SMALL_MIN; i <= SMALL_MAX; i++) {
+            SMALL[i - SMALL_MIN] = Integer.valueOf(i);
+        }
+    }
+
+    // Special methods ------------------------------------------------
+
     @Exposed.PythonMethod
-    static Object __str__(Integer o) { return o.toString(); }
+    static Object __str__(Object o) { return o.toString(); }
 
     @Exposed.PythonMethod
-    static Object __neg__(Integer o) { return -o; }
+    static void __str_into__(Object o, ReprBuilder out) {
+        out.append(o.toString());
+    }
+
+    @Exposed.PythonMethod
+    static Object __neg__(Object o) {
+        if (o instanceof Integer i) {
+            // -MIN_VALUE overflows int, but not long.
+            return valueOf(-(long)i.intValue());
+        } else if (o instanceof Long l) {
+            long v = l.longValue();
+            if (v == Long.MIN_VALUE) {
+                return BigInteger.valueOf(v).negate();
+            }
+            return valueOf(-v);
+        } else {
+            return valueOf(((BigInteger)o).negate());
+        }
+    }
 
     @Exposed.PythonMethod
-    static Object __add__(Integer u, Object v) {
-        return u + (Integer)v;
+    static Object __add__(Object u, Object v) {
+        if (u instanceof Integer a && v instanceof Integer b) {
+            // Cannot overflow long.
+            return valueOf(a.longValue() + b.longValue());
+        } else if (isIntOrLong(u) && isIntOrLong(v)) {
+            long a = ((Number)u).longValue(), b = ((Number)v).longValue();
+            long r = a + b;
+            // As Math.addExact: overflow if sign differs from both.
+            if (((a ^ r) & (b ^ r)) >= 0) { return valueOf(r); }
+        } else if (!isInt(v)) {
+            throw new TypeError(
+                    "unsupported operand type(s) for +: 'int' and '%s'",
+                    PythonRuntime.typeFactory.of(v).getName());
+        }
+        return valueOf(toBig(u).add(toBig(v)));
+    }
+
+    // Representation -------------------------------------------------
+
+    /**
+     * Return the Python {@code int} equal to {@code v}, from the cache
+     * if it is small.
+     *
+     * @param v value
+     * @return Python {@code int}
+     */
+    public static Integer valueOf(int v) {
+        if (v >= SMALL_MIN && v <= SMALL_MAX) {
+            return SMALL[v - SMALL_MIN];
+        }
+        return Integer.valueOf(v);
+    }
+
+    /**
+     * Return the Python {@code int} equal to {@code v}, as an
+     * {@code Integer} if it fits, and from the cache if it is small.
+     *
+     * @param v value
+     * @return Python {@code int}
+     */
+    public static Object valueOf(long v) {
+        int i = (int)v;
+        return i == v ? valueOf(i) : (Object)Long.valueOf(v);
+    }
+
+    /**
+     * Return the Python {@code int} equal to {@code v}, as an
+     * {@code Integer} or {@code Long} if it fits, and from the cache if
+     * it is small.
+     *
+     * @param v value
+     * @return Python {@code int}
+     */
+    public static Object valueOf(BigInteger v) {
+        if (v.bitLength() < Long.SIZE) {
+            return valueOf(v.longValue());
+        }
+        return v;
+    }
+
+    /**
+     * Whether {@code v} is one of the representations of {@code int}.
+     *
+     * @param v to test
+     * @return whether {@code Integer}, {@code Long} or
+     *     {@code BigInteger}
+     */
+    static boolean isInt(Object v) {
+        return isIntOrLong(v) || v instanceof BigInteger;
+    }
+
+    private static boolean isIntOrLong(Object v) {
+        return v instanceof Integer || v instanceof Long;
+    }
+
+    /**
+     * Convert a representation of {@code int} to {@code BigInteger}.
+     *
+     * @param v {@code Integer}, {@code Long} or {@code BigInteger}
+     * @return equivalent {@code BigInteger}
+     */
+    private static BigInteger toBig(Object v) {
+        return v instanceof BigInteger b ? b
+                : BigInteger.valueOf(((Number)v).longValue());
     }
 
-    public static final PyType TYPE = PythonRuntime.typeFactory
-            .register("int", Integer.class, MethodHandles.lookup());
+    public static final PyType TYPE = PythonRuntime.typeFactory.register(
+            "int", Integer.class, MethodHandles.lookup(), Long.class,
+            BigInteger.class);
 }
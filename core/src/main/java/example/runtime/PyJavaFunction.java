@@ -3,7 +3,6 @@ package example.runtime;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 
-import example.internal.ImplUtil;
 
 /**
  * A {@code PyJavaFunction} represents the Python type
@@ -12,7 +11,7 @@ import example.internal.ImplUtil;
  * defines the instance method {@code __call__}, taking as parameter the
  * array of arguments supplied from the call site.
  */
-public class PyJavaFunction implements WithType {
+public class PyJavaFunction extends AbstractPyObject {
 
     /** Name of the function. */
     final String name;
@@ -34,6 +33,18 @@ public class PyJavaFunction implements WithType {
      */
     final MethodHandle handle;
 
+    /** Parser of the arguments (not including "self"). */
+    final ArgParser parser;
+
+    /**
+     * Generated invoker of the method, used in place of
+     * {@link #handle} when the arguments need no parsing, or
+     * {@code null} if there is none. It is not bound to {@link #self}.
+     */
+    private final Invoker invoker;
+    /** Index of the method in {@link #invoker}. */
+    private final int index;
+
     /**
      * Construct a Python {@code builtin_function_or_method} object,
      * optionally bound to a particular "self" object, specifying the
@@ -41,14 +52,23 @@ public class PyJavaFunction implements WithType {
      *
      * @param name of the method
      * @param handle a prepared prepared to the method defined
+     * @param parser of the arguments (not including "self")
      * @param self object to which bound (or {@code null} if a static
      *     method)
      */
     protected PyJavaFunction(String name, MethodHandle handle,
-            Object self) {
+            ArgParser parser, Object self) {
+        this(name, handle, parser, self, null, 0);
+    }
+
+    private PyJavaFunction(String name, MethodHandle handle,
+            ArgParser parser, Object self, Invoker invoker, int index) {
         this.name = name;
         this.handle = handle;
+        this.parser = parser;
         this.self = self;
+        this.invoker = invoker;
+        this.index = index;
     }
 
     /**
@@ -57,17 +77,17 @@ public class PyJavaFunction implements WithType {
      * described by the parser do not include "self". This is the
      * factory we use to create a function in a module.
      *
-     * @param name of method
-     * @param method raw handle to the method defined
-     * @param self object to which bound (the module)
+     * @param md definition of the method in the module
+     * @param module object to which bound
      * @return A method bound to {@code self}
      */
     // Compare CPython PyCFunction_NewEx in methodobject.c
-    static PyJavaFunction forModule(String name, MethodHandle method,
+    static PyJavaFunction forModule(ModuleDef.MethodDef md,
             JavaModule module) {
         // Bind a provided (O,O[])O handle as (O[])O.
-        MethodHandle mh = method.bindTo(module).asType(MT.FUNCTION);
-        return new PyJavaFunction(name, mh, module);
+        MethodHandle mh = md.handle.bindTo(module).asType(MT.FUNCTION);
+        return new PyJavaFunction(md.name, mh, md.parser, module,
+                md.invoker, md.index);
     }
 
     /**
@@ -88,7 +108,8 @@ public class PyJavaFunction implements WithType {
     static PyJavaFunction from(PyMethodDescr descr, Object self)
             throws Throwable {
         MethodHandle handle = descr.getHandle().bindTo(self);
-        return new PyJavaFunction(descr.name, handle, self);
+        return new PyJavaFunction(descr.name, handle, descr.parser, self,
+                descr.invoker, descr.index);
     }
 
     /**
@@ -104,12 +125,21 @@ public class PyJavaFunction implements WithType {
 
     @Exposed.PythonMethod
     static Object __str__(PyJavaFunction f) {
+        StringBuilder sb = new StringBuilder();
+        __str_into__(f, new ReprBuilder(sb));
+        return sb.toString();
+    }
+
+    @Exposed.PythonMethod
+    static void __str_into__(PyJavaFunction f, ReprBuilder out) {
         Object self = f.self;
-        if (self == null || self instanceof PyModule)
-            return String.format("<built-in function '%s'>", f.name);
-        else
-            return String.format("<built-in method '%s' of %s>", f.name,
-                    ImplUtil.toAt(self));
+        if (self == null || self instanceof PyModule) {
+            out.append("<built-in function '").append(f.name)
+                    .append("'>");
+        } else {
+            out.append("<built-in method '").append(f.name)
+                    .append("' of ").appendAt(self).append(">");
+        }
     }
 
     /**
@@ -134,11 +164,30 @@ public class PyJavaFunction implements WithType {
          * The object that is the target is already bound into the
          * handle. It is either the target object of a method call, or
          * the module instance that defined the function. We therefore
-         * only have to supply the arguments.
+         * only have to supply the arguments. A generated invoker is not
+         * bound, so we supply the target too.
          */
+        if (f.invoker != null && args.length == f.parser.size()) {
+            return f.invoker.call(f.index, f.self, args);
+        }
         return f.handle.invoke(args);
     }
 
+    /**
+     * Call this object with arguments that may include keyword
+     * arguments. The keyword arguments are the last
+     * {@code kwnames.length} elements of {@code args}.
+     *
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args} (or
+     *     {@code null} if there are none)
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public Object call(Object[] args, String[] kwnames) throws Throwable {
+        return __call__(this, parser.parse(args, kwnames));
+    }
+
     @Override
     public PyType getType() { return TYPE; }
 
@@ -3,25 +3,63 @@ package example.runtime;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 
-public class PyMethodDescr implements WithType {
+public class PyMethodDescr extends AbstractPyObject {
 
     public final PyType objclass;
     public final String name;
     /** Handle on {@code __call__} always of type {@link MT#METHOD} */
     public final MethodHandle method;
+    /**
+     * Handle on the method of type {@link MT#UNARY} or
+     * {@link MT#BINARY}, when it takes exactly zero or one argument
+     * after "self", so that it may be called without an argument array.
+     * Otherwise {@code null}.
+     */
+    public final MethodHandle fixed;
+    /** Parser of the arguments after "self". */
+    public final ArgParser parser;
+    /**
+     * Generated invoker of the methods of the defining class, used in
+     * place of {@link #method} when the arguments need no parsing, or
+     * {@code null} if there is none.
+     */
+    final Invoker invoker;
+    /** Index of this method in {@link #invoker}. */
+    final int index;
 
     public PyMethodDescr(PyType objclass, String name,
-            MethodHandle method) {
+            MethodHandle method, MethodHandle fixed, ArgParser parser) {
+        this(objclass, name, method, fixed, parser, null, 0);
+    }
+
+    public PyMethodDescr(PyType objclass, String name,
+            MethodHandle method, MethodHandle fixed, ArgParser parser,
+            Invoker invoker, int index) {
         this.objclass = objclass;
         this.name = name;
         assert method.type() == MT.METHOD;
         this.method = method;
+        assert fixed == null || fixed.type() == MT.UNARY
+                || fixed.type() == MT.BINARY;
+        this.fixed = fixed;
+        this.parser = parser;
+        this.invoker = invoker;
+        this.index = index;
     }
 
     @Exposed.PythonMethod
     static Object __str__(PyMethodDescr self) {
-        return String.format("<method '%.50s' of '%.100s' objects>",
-                self.name, self.objclass.getName());
+        StringBuilder sb = new StringBuilder();
+        __str_into__(self, new ReprBuilder(sb));
+        return sb.toString();
+    }
+
+    @Exposed.PythonMethod
+    static void __str_into__(PyMethodDescr self, ReprBuilder out) {
+        // As "<method '%.50s' of '%.100s' objects>"
+        out.append("<method '").append(self.name, 50).append("' of '")
+                .append(self.objclass.getName(), 100)
+                .append("' objects>");
     }
 
     @Override
@@ -36,6 +74,44 @@ public class PyMethodDescr implements WithType {
         return method;
     }
 
+    /**
+     * Call the described method with {@code self} as its target. This
+     * has the same effect as binding the method by
+     * {@link #__get__(Object, PyType)} and calling the result, but
+     * without creating a bound method object.
+     *
+     * @param self target of the method
+     * @param args arguments of the call (not including {@code self})
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    // Compare CPython LOAD_METHOD and CALL_METHOD in ceval.c
+    public Object call(Object self, Object[] args) throws Throwable {
+        if (invoker != null && args.length == parser.size()) {
+            return invoker.call(index, self, args);
+        }
+        return method.invokeExact(self, args);
+    }
+
+    /**
+     * Call the described method with {@code self} as its target, and
+     * arguments that may include keyword arguments. The keyword
+     * arguments are the last {@code kwnames.length} elements of
+     * {@code args}. A call without keyword arguments is the same as
+     * {@link #call(Object, Object[])}.
+     *
+     * @param self target of the method
+     * @param args positional arguments then values of keyword ones
+     * @param kwnames keywords of the trailing {@code args} (or
+     *     {@code null} if there are none)
+     * @return result of the call
+     * @throws Throwable from the called method
+     */
+    public Object call(Object self, Object[] args, String[] kwnames)
+            throws Throwable {
+        return call(self, parser.parse(args, kwnames));
+    }
+
     /**
      * Return the described method, bound to {@code obj} as its "self"
      * argument, or if {@code obj==null}, return this descriptor.
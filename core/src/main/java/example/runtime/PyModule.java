@@ -2,7 +2,8 @@ package example.runtime;
 
 import java.lang.invoke.MethodHandles;
 
-public abstract class PyModule implements WithDict {
+public abstract class PyModule extends AbstractPyObject
+        implements WithDict {
 
     /** Name of this module. Not {@code null}. **/
     final String name;
@@ -17,15 +18,30 @@ public abstract class PyModule implements WithDict {
      */
     PyModule(String name) {
         this.name = name;
-        this.dict = new PyDict();
+        this.dict = Py.namespace();
     }
 
     @Exposed.PythonMethod
     static Object __str__(PyModule self) {
-        String bi = self instanceof JavaModule ? " (built-in)" : "";
-        return String.format("<module '%s'%s>", self.name, bi);
+        StringBuilder sb = new StringBuilder();
+        __str_into__(self, new ReprBuilder(sb));
+        return sb.toString();
     }
 
+    @Exposed.PythonMethod
+    static void __str_into__(PyModule self, ReprBuilder out) {
+        out.append("<module '").append(self.name).append("'");
+        if (self instanceof JavaModule) { out.append(" (built-in)"); }
+        out.append(">");
+    }
+
+    /**
+     * Return the name of this module.
+     *
+     * @return name of this module
+     */
+    public String getName() { return name; }
+
     @Override
     public PyType getType() { return TYPE; }
 
@@ -5,9 +5,9 @@ import java.lang.invoke.MethodHandles;
 import example.internal.ImplUtil;
 
 /**
- * The Python {@code object} object. In the toy implementation we do not
- * have MRO. If we did, this {@link PyObject#TYPE} would be at the
- * end of every type's except its own.
+ * The Python {@code object} object. This {@link PyObject#TYPE} is at
+ * the end of the MRO of every type, so the methods defined here are
+ * inherited by every type that does not define its own.
  */
 public class PyObject {
 
@@ -12,8 +12,8 @@ public interface PyType /* extends Representation */ {
     String getName();
 
     /**
-     * Look for a name, returning the entry directly from the
-     * dictionary. (No MRO in this toy version.)
+     * Look for a name along the MRO, returning the first entry found
+     * in the dictionary of a type.
      *
      * @param name to look up
      * @return dictionary entry or null
@@ -1,5 +1,7 @@
 package example.runtime;
 
+import java.lang.invoke.VarHandle;
+
 import example.internal.ImplUtil;
 
 /**
@@ -25,12 +27,15 @@ public class PyUtil {
                 t = PythonRuntime.typeFactory.of(o);
                 Object v = t.lookup("__str__");
                 if (v instanceof PyMethodDescr md) {
-                    v = md.__get__(o, null);
-                }
-                if (v instanceof PyJavaFunction f) {
+                    // Call unbound: no need to make a bound method.
+                    Object res = md.call(o, EMPTY_ARRAY);
+                    return res.toString();
+                } else if (v instanceof PyJavaFunction f) {
                     Object res = f.getHandle().invoke(EMPTY_ARRAY);
                     return res.toString();
                 }
+            } catch (PyException e) {
+                // A Python error in __str__: fall back quietly.
             } catch (Throwable e) {
                 System.err.println(e);
             }
@@ -48,6 +53,24 @@ public class PyUtil {
             }
         }
     }
+
+    /**
+     * Assign an identity to an object that keeps it in a field (see
+     * {@link WithId}), if the field is still zero, and return the
+     * identity the field then holds. If threads race to assign it, all
+     * receive the identity assigned by the first.
+     *
+     * @param field {@code VarHandle} on the {@code long} field of
+     *     {@code owner} that holds the identity
+     * @param owner object that holds its own identity
+     * @return the identity held in the field
+     */
+    public static long assignId(VarHandle field, Object owner) {
+        long n = ImplUtil.newId();
+        long i = (long)field.compareAndExchange(owner, 0L, n);
+        return i == 0L ? n : i;
+    }
+
     /** Empty (zero-length) array of {@code Object}. */
     static final Object[] EMPTY_ARRAY = new Object[0];
 }
@@ -0,0 +1,200 @@
+package example.runtime;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import example.internal.ImplUtil;
+import example.internal.PyTypeImpl;
+import example.internal.SpecialMethod;
+
+/**
+ * A destination for the string representation of objects, that the
+ * objects write into directly, rather than each returning a
+ * {@code String} that its container then copies. A type takes part by
+ * defining the special method {@code __str_into__(self, out)}, in which
+ * it appends its representation to {@code out}, and the representation
+ * of any object it contains by {@link #appendStr(Object)}. A type that
+ * does not define {@code __str_into__} is represented by the result of
+ * its {@code __str__}. An object of a Java class that has no Python type
+ * of its own (such as a {@code String} key) is represented by its
+ * {@code toString()}.
+ * <p>
+ * The builder stops accepting text when a maximum length is reached,
+ * and adds "..." to mark the cut, so that the representation of a huge
+ * object remains bounded. A container should stop its iteration when
+ * {@link #isFull()}. A container must also guard against containing
+ * itself, by means of {@link #enter(Object)} and {@link #exit(Object)}.
+ */
+public class ReprBuilder {
+
+    /** Marks where the text was cut off at the maximum length. */
+    private static final String ELLIPSIS = "...";
+
+    private final Appendable out;
+    private final int maxLength;
+
+    /** Number of characters appended so far. */
+    private int length;
+
+    /** Whether we have reached {@link #maxLength}. */
+    private boolean full;
+
+    /** Containers we are inside, created when first needed. */
+    private Map<Object, Object> active;
+
+    /**
+     * Create a builder that appends to the given destination, up to a
+     * maximum number of characters (then {@code "..."}).
+     *
+     * @param out destination of the text
+     * @param maxLength the most characters to append (before the mark)
+     * @throws IllegalArgumentException if {@code maxLength < 0}
+     */
+    public ReprBuilder(Appendable out, int maxLength)
+            throws IllegalArgumentException {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("maxLength < 0");
+        }
+        this.out = out;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Create a builder that appends to the given destination, without
+     * limit of length.
+     *
+     * @param out destination of the text
+     */
+    public ReprBuilder(Appendable out) { this(out, Integer.MAX_VALUE); }
+
+    /**
+     * Return the string representation of an object, as written by
+     * {@link #appendStr(Object)}.
+     *
+     * @param o object to represent
+     * @param maxLength the most characters to return (before "...")
+     * @return the representation
+     * @throws IllegalArgumentException if {@code maxLength < 0}
+     */
+    public static String str(Object o, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        new ReprBuilder(sb, maxLength).appendStr(o);
+        return sb.toString();
+    }
+
+    /**
+     * Append text, or as much of it as fits within the maximum length.
+     *
+     * @param s text to append
+     * @return this builder
+     */
+    public ReprBuilder append(CharSequence s) {
+        if (!full) {
+            int n = s.length();
+            try {
+                if (n <= maxLength - length) {
+                    out.append(s);
+                    length += n;
+                } else {
+                    out.append(s, 0, maxLength - length).append(ELLIPSIS);
+                    length = maxLength;
+                    full = true;
+                }
+            } catch (IOException e) {
+                throw PyException.wrapped(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append at most {@code precision} characters of the text, as the
+     * format {@code "%.ns"} would.
+     *
+     * @param s text to append
+     * @param precision the most characters of {@code s} to append
+     * @return this builder
+     */
+    public ReprBuilder append(CharSequence s, int precision) {
+        return append(s.length() <= precision ? s
+                : s.subSequence(0, precision));
+    }
+
+    /**
+     * Append the string representation of an object, by its
+     * {@code __str_into__} method if its type defines one, or else by
+     * its {@code __str__}. If the class of the object has no Python
+     * type of its own, so that its type is {@code object}, we use its
+     * {@code toString()}.
+     *
+     * @param o object to represent
+     * @return this builder
+     */
+    public ReprBuilder appendStr(Object o) {
+        if (full) { return this; }
+        PyTypeImpl t = (PyTypeImpl)PyTypeImpl.of(o);
+        if (t == PyObject.TYPE && o.getClass() != Object.class) {
+            // A Java object, e.g. a String: not "<object object at>"
+            return append(o.toString());
+        }
+        SpecialMethod into = SpecialMethod.op_str_into;
+        MethodHandle mh = t.getSlot(into);
+        try {
+            if (mh != into.empty) {
+                Object unused = mh.invokeExact(o, (Object)this);
+            } else {
+                Object s = t.getSlot(SpecialMethod.op_str).invokeExact(o);
+                append(s.toString());
+            }
+        } catch (Throwable e) {
+            throw PyException.wrapped(e);
+        }
+        return this;
+    }
+
+    /**
+     * Append text along the lines "T object at 0xhhh", where T is the
+     * type of {@code o}, as {@link ImplUtil#toAt(Object)} returns.
+     *
+     * @param o the object (not its type)
+     * @return this builder
+     */
+    public ReprBuilder appendAt(Object o) {
+        return append(PyTypeImpl.of(o).getName()).append(" object at 0x")
+                .append(Long.toHexString(ImplUtil.id(o)));
+    }
+
+    /**
+     * Whether the maximum length has been reached, so that further text
+     * will be ignored.
+     *
+     * @return whether the text has been cut off
+     */
+    public boolean isFull() { return full; }
+
+    /**
+     * Note that we are now writing the contents of {@code container},
+     * unless we are already inside it, which means it contains itself.
+     * If this returns {@code true}, the caller must call
+     * {@link #exit(Object)} when it has written the contents. If it
+     * returns {@code false}, the caller should write a short mark
+     * (such as "{...}") in place of the contents.
+     *
+     * @param container about to write its contents
+     * @return {@code false} if already writing {@code container}
+     */
+    public boolean enter(Object container) {
+        if (active == null) { active = new IdentityHashMap<>(); }
+        return active.putIfAbsent(container, container) == null;
+    }
+
+    /**
+     * Note that we have finished writing the contents of
+     * {@code container}.
+     *
+     * @param container that has written its contents
+     */
+    public void exit(Object container) { active.remove(container); }
+}
@@ -0,0 +1,35 @@
+package example.runtime;
+
+/**
+ * The Python {@code StopIteration}, raised when an iterator is
+ * exhausted. This is stackless, as it is part of normal control flow.
+ * An iterator that has no value to return should throw the shared
+ * {@link #INSTANCE} rather than make a new one.
+ */
+public class StopIteration extends PyException {
+
+    /** A shared instance with no value. */
+    public static final StopIteration INSTANCE = new StopIteration(null);
+
+    /** The value returned by a generator, or {@code null}. */
+    private final Object value;
+
+    /**
+     * Construct with the given value.
+     *
+     * @param value returned (or {@code null})
+     */
+    public StopIteration(Object value) {
+        super(value == null ? null : String.valueOf(value), null, true);
+        this.value = value;
+    }
+
+    /**
+     * Return the value returned by a generator, or {@code null}.
+     *
+     * @return the value
+     */
+    public Object getValue() { return value; }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,23 @@
+package example.runtime;
+
+/**
+ * The Python {@code SystemError}, raised on an internal error. An
+ * instance made to wrap a Java exception is stackless, since the cause
+ * holds the stack trace that matters.
+ */
+public class SystemError extends PyException {
+
+    public SystemError(String message) { super(message); }
+
+    /**
+     * Construct a stackless wrapper for the given cause.
+     *
+     * @param message detail message
+     * @param cause that this wraps
+     */
+    public SystemError(String message, Throwable cause) {
+        super(message, cause, true);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,24 @@
+package example.runtime;
+
+/**
+ * The Python {@code TypeError}, raised when an operation is applied to
+ * an object of inappropriate type. It carries a stack trace, since it
+ * normally signals a mistake.
+ */
+public class TypeError extends PyException {
+
+    public TypeError(String message) { super(message); }
+
+    /**
+     * Construct with a message formatted as by
+     * {@link String#format(String, Object...)}.
+     *
+     * @param fmt format of the message
+     * @param args arguments to the format
+     */
+    public TypeError(String fmt, Object... args) {
+        super(String.format(fmt, args));
+    }
+
+    private static final long serialVersionUID = 1L;
+}
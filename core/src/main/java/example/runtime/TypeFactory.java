@@ -44,4 +44,21 @@ public interface TypeFactory {
      * @return registered type object
      */
     PyType register(String name, Class<?> javaClass, Lookup lookup);
+
+    /**
+     * Add a Python type object to the registry for the specified
+     * representation class, and for further classes that the type
+     * adopts as alternative representations of its instances. (For
+     * example, {@code int} is represented by {@code Integer},
+     * {@code Long} and {@code BigInteger}.) Methods of the type must
+     * accept all the representations as "self".
+     *
+     * @param name of the type in Python
+     * @param javaClass representation class
+     * @param lookup loan of access rights
+     * @param adopted further representation classes
+     * @return registered type object
+     */
+    PyType register(String name, Class<?> javaClass, Lookup lookup,
+            Class<?>... adopted);
 }
@@ -0,0 +1,51 @@
+package example.runtime;
+
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A Python object that keeps its own identity (the value of Python
+ * {@code id()}) in a field, assigned when it is first asked for. The
+ * run-time finds the identity of any other object in a table, at the
+ * cost of a look-up and an entry per object, so the run-time's own
+ * types implement this interface, mostly by extending
+ * {@link AbstractPyObject}. Elsewhere, the field is a
+ * {@code volatile long id}, zero until assigned, and the
+ * implementation is: <pre>
+ * private static final VarHandle ID =
+ *         WithId.idField(MethodHandles.lookup());
+ *
+ * public long id() {
+ *     long i = id;
+ *     return i != 0L ? i : PyUtil.assignId(ID, this);
+ * }
+ * </pre>
+ */
+public interface WithId {
+
+    /**
+     * Return the identity of this object, obtaining it from
+     * {@link PyUtil#assignId(java.lang.invoke.VarHandle, Object)} the
+     * first time.
+     *
+     * @return the Python {@code id()} of this object
+     */
+    long id();
+
+    /**
+     * Find the {@code long id} field of the lookup class, for use in
+     * its static initialisation.
+     *
+     * @param lookup of the class declaring the field
+     * @return handle on the field
+     * @throws ExceptionInInitializerError if there is no such field
+     */
+    static VarHandle idField(Lookup lookup) {
+        try {
+            return lookup.findVarHandle(lookup.lookupClass(), "id",
+                    long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
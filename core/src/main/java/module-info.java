@@ -1,4 +1,6 @@
 module example.core {
+    requires jdk.jfr;
+
     exports example.core;
     exports example.runtime;
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package example.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import example.runtime.TypeError;
+
+/** Success, failure and cancellation of the calls in a {@link CallGroup}. */
+class CallGroupTest {
+
+    private final Interp interp = new Interp();
+    private final TestModule module = new TestModule();
+
+    @BeforeEach
+    void drainPermits() {
+        TestModule.napping.drainPermits();
+        TestModule.interrupted.drainPermits();
+    }
+
+    /** Wait until a call of {@code nap} is running. */
+    private static void awaitNap() throws InterruptedException {
+        assertTrue(TestModule.napping.tryAcquire(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void joinReturnsResultsInOrder() {
+        try (CallGroup g = interp.newCallGroup()) {
+            g.call(module.lookup("nap"), 20);
+            g.call(module.lookup("twice"), 21);
+            g.call(module.lookup("check"), 5);
+            assertEquals(List.of(20, 42, 5), g.join());
+        }
+    }
+
+    @Test
+    void failureCancelsOtherCalls() throws Exception {
+        try (CallGroup g = interp.newCallGroup()) {
+            CompletableFuture<Object> slow =
+                    g.call(module.lookup("nap"), 60_000);
+            awaitNap();
+            g.call(module.lookup("fail"));
+            TypeError e = assertThrows(TypeError.class, g::join);
+            assertEquals("failed", e.getMessage());
+            assertTrue(slow.isCancelled());
+            assertTrue(TestModule.interrupted.tryAcquire(10,
+                    TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void closeCancelsRunningCalls() throws Exception {
+        CompletableFuture<Object> slow;
+        CallGroup g = interp.newCallGroup();
+        try (g) {
+            slow = g.call(module.lookup("nap"), 60_000);
+            awaitNap();
+        }
+        assertTrue(slow.isCancelled());
+        assertTrue(TestModule.interrupted.tryAcquire(10, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class,
+                () -> g.call(module.lookup("twice"), 1));
+    }
+}
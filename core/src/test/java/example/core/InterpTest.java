@@ -0,0 +1,114 @@
+package example.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import example.runtime.TypeError;
+
+/**
+ * Module import and look-up from many threads, and failure in
+ * {@link Interp#map(Object, int[])}.
+ */
+class InterpTest {
+
+    private static final String[] NAMES = {"twice", "check", "fail", "nap"};
+
+    @Test
+    void importFromManyThreads() throws Exception {
+        Interp interp = new Interp();
+        int before = TestModule.execs.get(), n = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<TestModule>> results = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return interp.importJavaModule(TestModule.class);
+                }));
+            }
+            start.countDown();
+            TestModule first = results.get(0).get();
+            for (Future<TestModule> r : results) { assertSame(first, r.get()); }
+            assertEquals(before + 1, TestModule.execs.get());
+            assertSame(first, interp.getModule("test_module"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void lookupWhileBinding() throws Exception {
+        int n = 8;
+        for (int round = 0; round < 50; round++) {
+            TestModule m = new TestModule();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(n);
+            try {
+                List<Future<Object[]>> results = new ArrayList<>();
+                for (int k = 0; k < n; k++) {
+                    int offset = k;
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        if (offset == 0) { m.getDict(); }
+                        Object[] found = new Object[NAMES.length];
+                        for (int j = 0; j < NAMES.length; j++) {
+                            int i = (j + offset) % NAMES.length;
+                            found[i] = m.lookup(NAMES[i]);
+                        }
+                        return found;
+                    }));
+                }
+                start.countDown();
+                Object[] first = results.get(0).get();
+                for (Future<Object[]> r : results) {
+                    Object[] found = r.get();
+                    for (int i = 0; i < NAMES.length; i++) {
+                        assertNotNull(found[i], NAMES[i]);
+                        assertSame(first[i], found[i], NAMES[i]);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void mapReturnsResultsInOrder() {
+        Interp interp = new Interp();
+        interp.setMapThreshold(16);
+        Object twice = new TestModule().lookup("twice");
+        int[] inputs = new int[1000];
+        Object[] expected = new Object[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = i;
+            expected[i] = 2 * i;
+        }
+        assertArrayEquals(expected, interp.map(twice, inputs));
+    }
+
+    @Test
+    void mapThrowsFailureOfCall() {
+        Interp interp = new Interp();
+        interp.setMapThreshold(16);
+        Object check = new TestModule().lookup("check");
+        int[] inputs = new int[10_000];
+        for (int i = 0; i < inputs.length; i++) { inputs[i] = i; }
+        TypeError e = assertThrows(TypeError.class,
+                () -> interp.map(check, inputs));
+        assertEquals("unlucky 777", e.getMessage());
+    }
+}
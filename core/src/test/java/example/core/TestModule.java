@@ -0,0 +1,62 @@
+package example.core;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import example.runtime.Exposed;
+import example.runtime.JavaModule;
+import example.runtime.PyException;
+import example.runtime.TypeError;
+
+/**
+ * A module for the tests of {@link Interp}, {@link CallGroup} and
+ * {@link BulkMap}. It must be public to be imported.
+ */
+public class TestModule extends JavaModule {
+
+    /** Number of times the body of any instance has been executed. */
+    static final AtomicInteger execs = new AtomicInteger();
+
+    /** Released each time {@link #nap(int)} starts. */
+    static final Semaphore napping = new Semaphore(0);
+
+    /** Released each time {@link #nap(int)} is interrupted. */
+    static final Semaphore interrupted = new Semaphore(0);
+
+    public TestModule() { super(DEFINITION); }
+
+    @Override
+    public void exec() {
+        execs.incrementAndGet();
+        // Give other importers time to arrive while we are busy.
+        Thread.yield();
+    }
+
+    @Exposed.PythonMethod
+    public Object twice(int x) { return 2 * x; }
+
+    @Exposed.PythonMethod
+    public Object check(int x) {
+        if (x == 777) { throw new TypeError("unlucky %d", x); }
+        return x;
+    }
+
+    @Exposed.PythonMethod
+    public Object fail() { throw new TypeError("failed"); }
+
+    @Exposed.PythonMethod
+    public Object nap(int ms) {
+        napping.release();
+        try {
+            Thread.sleep(ms);
+            return ms;
+        } catch (InterruptedException e) {
+            interrupted.release();
+            throw new PyException("interrupted", e);
+        }
+    }
+
+    private static final JavaModule.Definition DEFINITION =
+            JavaModule.define("test_module", MethodHandles.lookup());
+}
@@ -0,0 +1,83 @@
+package example.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import example.runtime.PyDict;
+
+/**
+ * Identities of objects that keep their own ({@code WithId}) and of
+ * those found in the table.
+ */
+class IdentityTest {
+
+    @Test
+    void identityIsStable() {
+        Object o = new Object();
+        PyDict d = new PyDict();
+        long io = Identity.id(o), id = Identity.id(d);
+        assertNotEquals(0L, io);
+        assertNotEquals(0L, id);
+        assertNotEquals(io, id);
+        assertEquals(io, Identity.id(o));
+        assertEquals(id, Identity.id(d));
+        assertEquals(id, d.id());
+    }
+
+    @Test
+    void identitiesAreUnique() {
+        int n = 100_000;
+        List<Object> objects = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            objects.add(i % 2 == 0 ? new Object() : new PyDict());
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Object o : objects) { assertTrue(ids.add(Identity.id(o))); }
+    }
+
+    @Test
+    void concurrentFirstRequestsAgree() throws Exception {
+        int n = 10_000, threads = 8;
+        Object[] objects = new Object[n];
+        for (int i = 0; i < n; i++) {
+            objects[i] = i % 2 == 0 ? new Object() : new PyDict();
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    long[] ids = new long[n];
+                    for (int i = 0; i < n; i++) {
+                        ids[i] = Identity.id(objects[i]);
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            long[] first = results.get(0).get();
+            for (Future<long[]> r : results) {
+                long[] ids = r.get();
+                for (int i = 0; i < n; i++) { assertEquals(first[i], ids[i]); }
+            }
+            Set<Long> distinct = new HashSet<>();
+            for (long id : first) { assertTrue(distinct.add(id)); }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package example.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import example.runtime.Exposed;
+import example.runtime.PyType;
+import example.runtime.PythonRuntime;
+import example.runtime.TypeError;
+
+/**
+ * Look-up in types whose methods are exposed lazily, and changes to the
+ * copy-on-write dictionary of a type.
+ */
+class PyTypeImplTest {
+
+    private static final String[] NAMES =
+            {"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    /** Each round of the race uses a type not looked up before. */
+    static class Lazy0 {
+        @Exposed.PythonMethod Object a() { return 0; }
+        @Exposed.PythonMethod Object b() { return 1; }
+        @Exposed.PythonMethod Object c() { return 2; }
+        @Exposed.PythonMethod Object d() { return 3; }
+        @Exposed.PythonMethod Object e() { return 4; }
+        @Exposed.PythonMethod Object f() { return 5; }
+        @Exposed.PythonMethod Object g() { return 6; }
+        @Exposed.PythonMethod Object h() { return 7; }
+    }
+
+    static class Lazy1 {
+        @Exposed.PythonMethod Object a() { return 0; }
+        @Exposed.PythonMethod Object b() { return 1; }
+        @Exposed.PythonMethod Object c() { return 2; }
+        @Exposed.PythonMethod Object d() { return 3; }
+        @Exposed.PythonMethod Object e() { return 4; }
+        @Exposed.PythonMethod Object f() { return 5; }
+        @Exposed.PythonMethod Object g() { return 6; }
+        @Exposed.PythonMethod Object h() { return 7; }
+    }
+
+    static class Lazy2 {
+        @Exposed.PythonMethod Object a() { return 0; }
+        @Exposed.PythonMethod Object b() { return 1; }
+        @Exposed.PythonMethod Object c() { return 2; }
+        @Exposed.PythonMethod Object d() { return 3; }
+        @Exposed.PythonMethod Object e() { return 4; }
+        @Exposed.PythonMethod Object f() { return 5; }
+        @Exposed.PythonMethod Object g() { return 6; }
+        @Exposed.PythonMethod Object h() { return 7; }
+    }
+
+    @Exposed.Mutable
+    static class Open {
+        @Exposed.PythonMethod Object m() { return 0; }
+    }
+
+    static class Closed {
+        @Exposed.PythonMethod Object m() { return 0; }
+    }
+
+    private static PyType register(String name, Class<?> c)
+            throws IllegalAccessException {
+        return PythonRuntime.typeFactory.register(name,
+                MethodHandles.privateLookupIn(c, MethodHandles.lookup()));
+    }
+
+    @Test
+    void concurrentLookupDuringLazyExposure() throws Exception {
+        race(register("Lazy0", Lazy0.class));
+        race(register("Lazy2", Lazy2.class));
+    }
+
+    @Test
+    void concurrentLookupAndGetDict() throws Exception {
+        PyType t = register("Lazy1", Lazy1.class);
+        Future<?> all;
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            all = pool.submit(() -> t.getDict());
+            race(t);
+            all.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(NAMES.length, t.getDict().size());
+    }
+
+    /**
+     * Look up every name from several threads at once, each in its own
+     * order, and check all see the same entries.
+     */
+    private static void race(PyType t) throws Exception {
+        int n = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Object[]>> tasks = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            int offset = k;
+            tasks.add(() -> {
+                start.await();
+                Object[] found = new Object[NAMES.length];
+                for (int j = 0; j < NAMES.length; j++) {
+                    int i = (j + offset) % NAMES.length;
+                    found[i] = t.lookup(NAMES[i]);
+                }
+                return found;
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<Object[]>> results = new ArrayList<>();
+            for (Callable<Object[]> c : tasks) {
+                results.add(pool.submit(c));
+            }
+            start.countDown();
+            Object[] first = results.get(0).get();
+            for (Future<Object[]> r : results) {
+                Object[] found = r.get();
+                for (int i = 0; i < NAMES.length; i++) {
+                    assertNotNull(found[i], NAMES[i]);
+                    assertSame(first[i], found[i], NAMES[i]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void mutableTypeDictIsCopiedOnWrite() throws Exception {
+        PyType t = register("Open", Open.class);
+        Map<Object, Object> d = t.getDict();
+        d.put("x", 1);
+        assertEquals(1, t.lookup("x"));
+
+        // Iteration sees the dictionary as it was when it began.
+        int n = d.size();
+        int seen = 0;
+        for (Iterator<Map.Entry<Object, Object>> it =
+                d.entrySet().iterator(); it.hasNext(); it.next()) {
+            seen += 1;
+            d.put("y" + seen, seen);
+        }
+        assertEquals(n, seen);
+        assertEquals(n + seen, d.size());
+
+        // Removal through the views is seen by look-up.
+        assertTrue(d.keySet().remove("x"));
+        assertNull(t.lookup("x"));
+        d.entrySet().removeIf(e -> e.getKey().equals("y1"));
+        assertNull(t.lookup("y1"));
+        d.clear();
+        assertTrue(d.isEmpty());
+        assertNull(t.lookup("m"));
+    }
+
+    @Test
+    void frozenTypeDictRaisesTypeError() throws Exception {
+        PyType t = register("Closed", Closed.class);
+        Map<Object, Object> d = t.getDict();
+        assertFalse(((PyTypeImpl)t).isMutable());
+        assertThrows(TypeError.class, () -> d.put("x", 1));
+        assertThrows(TypeError.class, () -> d.remove("m"));
+        assertThrows(TypeError.class, () -> d.keySet().remove("m"));
+        assertThrows(TypeError.class, d::clear);
+        assertNotNull(t.lookup("m"));
+    }
+}
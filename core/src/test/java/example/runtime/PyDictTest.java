@@ -0,0 +1,150 @@
+package example.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Insertion, deletion and growth of {@link PyDict}, and the sizes its
+ * spliterators report.
+ */
+class PyDictTest {
+
+    /** A dictionary of {@code n} integer keys mapped to their squares. */
+    private static PyDict squares(int n) {
+        PyDict d = new PyDict();
+        for (int i = 0; i < n; i++) { d.put(i, i * i); }
+        return d;
+    }
+
+    @Test
+    void insertGrowsAndKeepsOrder() {
+        PyDict d = squares(1000);
+        assertEquals(1000, d.size());
+        for (int i = 0; i < 1000; i++) { assertEquals(i * i, d.get(i)); }
+        int expected = 0;
+        for (Object k : d.keySet()) { assertEquals(expected++, k); }
+    }
+
+    @Test
+    void replaceKeepsPosition() {
+        PyDict d = squares(10);
+        assertEquals(9, d.put(3, "three"));
+        assertEquals(10, d.size());
+        assertEquals(3, d.keyArray()[3]);
+        assertEquals("three", d.valueArray()[3]);
+    }
+
+    @Test
+    void deleteAndReinsert() {
+        PyDict d = squares(100);
+        for (int i = 0; i < 100; i += 2) { assertEquals(i * i, d.remove(i)); }
+        assertEquals(50, d.size());
+        assertNull(d.get(10));
+        assertNull(d.remove(10));
+        assertTrue(d.containsKey(11));
+        // A key put back goes to the end.
+        d.put(10, "ten");
+        Object[] keys = d.keyArray();
+        assertEquals(51, keys.length);
+        assertEquals(10, keys[50]);
+        // Growing again reclaims the deleted positions.
+        for (int i = 100; i < 1000; i++) { d.put(i, i); }
+        assertEquals(951, d.size());
+        assertEquals("ten", d.get(10));
+    }
+
+    @Test
+    void versionCountsChanges() {
+        PyDict d = new PyDict();
+        long v = d.getVersion();
+        d.put("a", 1);
+        assertTrue(d.getVersion() > v);
+        v = d.getVersion();
+        d.remove("b");
+        assertEquals(v, d.getVersion());
+        d.remove("a");
+        assertTrue(d.getVersion() > v);
+    }
+
+    @Test
+    void stringKeysAcceptOtherKeys() {
+        PyDict d = new PyDict(true);
+        d.put("a", 1);
+        assertTrue(d.hasStringKeys());
+        d.put(2, "b");
+        assertFalse(d.hasStringKeys());
+        assertEquals(1, d.get("a"));
+        assertEquals("b", d.get(2));
+    }
+
+    @Test
+    void spliteratorIsSizedWithoutDeletions() {
+        PyDict d = squares(1000);
+        Spliterator<Object> s = d.keySet().spliterator();
+        assertTrue(s.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(1000, s.getExactSizeIfKnown());
+        Spliterator<Object> t = s.trySplit();
+        assertEquals(1000,
+                s.getExactSizeIfKnown() + t.getExactSizeIfKnown());
+    }
+
+    @Test
+    void spliteratorIsNotSizedAfterDeletions() {
+        PyDict d = squares(1000);
+        d.remove(500);
+        Spliterator<Object> s = d.values().spliterator();
+        assertFalse(s.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(-1, s.getExactSizeIfKnown());
+        // The estimate still bounds what is there.
+        assertTrue(s.estimateSize() >= 999);
+        assertEquals(999,
+                StreamSupport.stream(s, false).count());
+    }
+
+    @Test
+    void parallelStreamSeesEveryEntry() {
+        PyDict d = squares(10_000);
+        for (int i = 0; i < 10_000; i += 3) { d.remove(i); }
+        long sum = d.entrySet().parallelStream()
+                .mapToLong(e -> (Integer)e.getValue()).sum();
+        long expected = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 3 != 0) { expected += i * i; }
+        }
+        assertEquals(expected, sum);
+    }
+
+    @Test
+    void spliteratorDetectsChange() {
+        PyDict d = squares(10);
+        List<Object> seen = new ArrayList<>();
+        assertThrows(ConcurrentModificationException.class,
+                () -> d.keySet().spliterator().forEachRemaining(k -> {
+                    seen.add(k);
+                    d.put(100, 100);
+                }));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        PyDict d = squares(20);
+        PyDict c = new PyDict(d);
+        c.remove(5);
+        c.put(20, 400);
+        assertEquals(20, d.size());
+        assertEquals(25, d.get(5));
+        assertNull(d.get(20));
+        assertEquals(20, c.size());
+    }
+}
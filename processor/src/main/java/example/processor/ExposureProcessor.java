@@ -0,0 +1,286 @@
+package example.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * An annotation processor that writes, for each class declaring methods
+ * annotated {@code @Exposed.PythonMethod}, a companion class holding a
+ * table of those methods. The runtime uses the table in place of
+ * reflection on the class, when it defines a Python {@code type} or
+ * {@code module} from it.
+ * <p>
+ * For a class {@code p.C}, the companion is the package-private class
+ * {@code p.C_Exposure}, and it has the form:
+ * <pre>
+ * final class C_Exposure {
+ *     static final String[] NAMES = {"__str__", ... };
+ *     static final int[] ARITIES = {1, ... };
+ *     static final String[][] PARAMETERS = {{}, ... };
+ *     static final String[][] DEFAULTS = {null, ... };
+ *     static MethodHandle find(Lookup lookup, int i)
+ *             throws ReflectiveOperationException {
+ *         switch (i) {
+ *             case 0: return lookup.findStatic(C.class, "__str__",
+ *                     MethodType.methodType(Object.class, Object.class));
+ *             ...
+ *         }
+ *     }
+ * }
+ * </pre> The arity counts the parameters of the handle, including the
+ * target of an instance method. The parameters are the names of those
+ * after the target, and the defaults are the text of any
+ * {@code @Exposed.Default} annotations on them (or {@code null} for a
+ * method where none has one). {@code find} must be given a lookup
+ * with private access to {@code C}, as supplied by the definition of
+ * the type or module.
+ * <p>
+ * A class that the companion could not name (a private nested class)
+ * gets no table, and the runtime will fall back to reflection.
+ */
+@SupportedAnnotationTypes(ExposureProcessor.PYTHON_METHOD)
+public class ExposureProcessor extends AbstractProcessor {
+
+    /** Name of the annotation we process. */
+    static final String PYTHON_METHOD =
+            "example.runtime.Exposed.PythonMethod";
+
+    /** Name of the annotation giving a default to a parameter. */
+    static final String DEFAULT = "example.runtime.Exposed.Default";
+
+    /** Suffix of the name of a generated class. */
+    static final String SUFFIX = "_Exposure";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+
+        // Group the annotated methods by declaring class (in order).
+        Map<TypeElement, List<ExecutableElement>> classes =
+                new LinkedHashMap<>();
+        for (TypeElement a : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(a)) {
+                if (e.getKind() == ElementKind.METHOD) {
+                    TypeElement c = (TypeElement)e.getEnclosingElement();
+                    classes.computeIfAbsent(c, k -> new ArrayList<>())
+                            .add((ExecutableElement)e);
+                }
+            }
+        }
+
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : classes
+                .entrySet()) {
+            TypeElement c = entry.getKey();
+            if (isNameable(c)) {
+                try {
+                    write(c, entry.getValue());
+                } catch (IOException ioe) {
+                    processingEnv.getMessager().printMessage(Kind.ERROR,
+                            "Cannot write exposure table: " + ioe, c);
+                }
+            }
+        }
+
+        // Leave the annotation for other processors (if any).
+        return false;
+    }
+
+    /**
+     * Whether a class in the same package can name {@code c} in source.
+     *
+     * @param c class to test
+     * @return {@code true} if it can
+     */
+    private static boolean isNameable(TypeElement c) {
+        for (Element e = c; e instanceof TypeElement t; e =
+                e.getEnclosingElement()) {
+            if (t.getModifiers().contains(Modifier.PRIVATE)
+                    || t.getNestingKind() == NestingKind.LOCAL
+                    || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the companion class for {@code c}.
+     *
+     * @param c class declaring exposed methods
+     * @param methods the exposed methods in declaration order
+     * @throws IOException from the filer
+     */
+    private void write(TypeElement c, List<ExecutableElement> methods)
+            throws IOException {
+        PackageElement p = processingEnv.getElementUtils().getPackageOf(c);
+        String pkg = p.getQualifiedName().toString();
+        String binary =
+                processingEnv.getElementUtils().getBinaryName(c).toString();
+        String simple = (pkg.isEmpty() ? binary
+                : binary.substring(pkg.length() + 1)) + SUFFIX;
+        String qualified = pkg.isEmpty() ? simple : pkg + "." + simple;
+        String owner = erasure(c.asType());
+
+        Writer w = processingEnv.getFiler().createSourceFile(qualified, c)
+                .openWriter();
+        try (PrintWriter out = new PrintWriter(w)) {
+            if (!pkg.isEmpty()) {
+                out.printf("package %s;%n%n", pkg);
+            }
+            out.println("import java.lang.invoke.MethodHandle;");
+            out.println("import java.lang.invoke.MethodHandles.Lookup;");
+            out.println("import java.lang.invoke.MethodType;");
+            out.println();
+            out.printf("/** Methods of {@code %s} exposed to Python. */%n",
+                    owner);
+            // Not @Generated: the module may not read java.compiler.
+            out.printf("// Generated by %s%n", getClass().getName());
+            out.printf("final class %s {%n%n", simple);
+            out.printf("    private %s() {}%n%n", simple);
+
+            out.print("    static final String[] NAMES = {");
+            String sep = "";
+            for (ExecutableElement m : methods) {
+                out.printf("%s\"%s\"", sep, m.getSimpleName());
+                sep = ", ";
+            }
+            out.println("};");
+
+            out.print("    static final int[] ARITIES = {");
+            sep = "";
+            for (ExecutableElement m : methods) {
+                int n = m.getParameters().size();
+                if (!m.getModifiers().contains(Modifier.STATIC)) { n++; }
+                out.printf("%s%d", sep, n);
+                sep = ", ";
+            }
+            out.println("};");
+
+            out.print("    static final String[][] PARAMETERS = {");
+            sep = "";
+            for (ExecutableElement m : methods) {
+                out.print(sep + "{");
+                String s = "";
+                for (VariableElement v : parameters(m)) {
+                    out.printf("%s\"%s\"", s, v.getSimpleName());
+                    s = ", ";
+                }
+                out.print("}");
+                sep = ", ";
+            }
+            out.println("};");
+
+            out.print("    static final String[][] DEFAULTS = {");
+            sep = "";
+            for (ExecutableElement m : methods) {
+                out.print(sep + defaults(m));
+                sep = ", ";
+            }
+            out.println("};");
+            out.println();
+
+            out.println("    static MethodHandle find(Lookup lookup, int i)");
+            out.println("            throws ReflectiveOperationException {");
+            out.println("        switch (i) {");
+            int i = 0;
+            for (ExecutableElement m : methods) {
+                String find = m.getModifiers().contains(Modifier.STATIC)
+                        ? "findStatic" : "findVirtual";
+                out.printf("            case %d: return lookup.%s(%s.class,%n",
+                        i++, find, owner);
+                out.printf("                    \"%s\", "
+                        + "MethodType.methodType(%s.class",
+                        m.getSimpleName(), erasure(m.getReturnType()));
+                for (VariableElement v : m.getParameters()) {
+                    out.printf(", %s.class", erasure(v.asType()));
+                }
+                out.println("));");
+            }
+            out.println("            default:");
+            out.println("                throw new "
+                    + "IndexOutOfBoundsException(i);");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /** The parameters of {@code m} after the target. */
+    private static List<? extends VariableElement> parameters(
+            ExecutableElement m) {
+        List<? extends VariableElement> p = m.getParameters();
+        boolean isStatic = m.getModifiers().contains(Modifier.STATIC);
+        return isStatic && !p.isEmpty() ? p.subList(1, p.size()) : p;
+    }
+
+    /**
+     * The source form of an array initialiser for the defaults of the
+     * parameters of {@code m}, or {@code "null"} if there are none.
+     */
+    private static String defaults(ExecutableElement m) {
+        List<String> texts = new ArrayList<>();
+        boolean any = false;
+        for (VariableElement v : parameters(m)) {
+            String text = "null";
+            for (AnnotationMirror a : v.getAnnotationMirrors()) {
+                TypeElement t =
+                        (TypeElement)a.getAnnotationType().asElement();
+                if (t.getQualifiedName().contentEquals(DEFAULT)) {
+                    for (AnnotationValue value : a.getElementValues()
+                            .values()) {
+                        text = literal(value.getValue().toString());
+                        any = true;
+                    }
+                }
+            }
+            texts.add(text);
+        }
+        return any ? "{" + String.join(", ", texts) + "}" : "null";
+    }
+
+    /** A Java string literal for the given text. */
+    private static String literal(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"', '\\' -> b.append('\\').append(c);
+                case '\n' -> b.append("\\n");
+                default -> b.append(c);
+            }
+        }
+        return b.append('"').toString();
+    }
+
+    /** The source form of the erasure of a type. */
+    private String erasure(TypeMirror t) {
+        return processingEnv.getTypeUtils().erasure(t).toString();
+    }
+}